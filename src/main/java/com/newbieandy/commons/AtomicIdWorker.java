@@ -0,0 +1,161 @@
+package com.newbieandy.commons;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 无锁的全局唯一自增ID生成器
+ * 与{@link IdWorker}生成的ID位布局完全一致，默认为：
+ * 42位时间标识 + 3位处理中心ID + 6位工作机器ID + 12位毫秒内序列号
+ * 区别在于不使用synchronized，而是将时间标识与序列号打包到同一个long中，
+ * 通过CAS整体更新，多线程下吞吐量随线程数增长而不会因锁竞争下降
+ * 配置方式与{@link IdWorker}相同
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public class AtomicIdWorker extends IdWorker {
+
+    //打包状态：高位为时间标识(当前时间-twepoch)，低sequenceBits位为毫秒内序列号
+    private final AtomicLong state = new AtomicLong(0L);
+    //处理中心ID与工作机器ID拼接后的固定位
+    private final long nodeBits;
+
+    /**
+     * 创建ID生成器
+     *
+     * @param workerId     工作机器ID(0-63,同处理中心下机器ID不可重复)
+     * @param datacenterId 处理中心ID(0-7，此值不可重复)
+     */
+    public AtomicIdWorker(long workerId, long datacenterId) {
+        super(workerId, datacenterId);
+        this.nodeBits = (this.datacenterId << datacenterIdShift) | (this.workerId << workerIdShift);
+    }
+
+    /**
+     * 按指定位布局创建ID生成器
+     *
+     * @param layout       位布局
+     * @param workerId     工作机器ID
+     * @param datacenterId 处理中心ID
+     */
+    public AtomicIdWorker(IdLayout layout, long workerId, long datacenterId) {
+        super(layout, workerId, datacenterId);
+        this.nodeBits = (this.datacenterId << datacenterIdShift) | (this.workerId << workerIdShift);
+    }
+
+    /**
+     * 通过分配器申请工作机器ID创建ID生成器
+     *
+     * @param layout    位布局
+     * @param allocator 工作机器ID分配器
+     */
+    public AtomicIdWorker(IdLayout layout, WorkerIdAllocator allocator) {
+        super(layout, allocator);
+        this.nodeBits = (this.datacenterId << datacenterIdShift) | (this.workerId << workerIdShift);
+    }
+
+    /**
+     * 创建ID生成器，读取环境变量 IDWORKER_CONFIG
+     */
+    public AtomicIdWorker() {
+        super();
+        this.nodeBits = (this.datacenterId << datacenterIdShift) | (this.workerId << workerIdShift);
+    }
+
+    /**
+     * 获取全局自增唯一ID（无锁）
+     *
+     * @return
+     */
+    @Override
+    public long nextId() {
+        for (; ; ) {
+            //先读状态再读时钟，保证读到的时钟不早于其它线程写入状态时使用的时钟
+            long current = state.get();
+            long lastTimestamp = current >>> sequenceBits;
+            long timestamp = timeGen() - twepoch;
+
+            if (timestamp < lastTimestamp) {
+                //时钟回拨，按策略处理
+                timestamp = clockBackwards(lastTimestamp + twepoch, timestamp + twepoch) - twepoch;
+            }
+
+            long next;
+            if (timestamp == lastTimestamp) {
+                if ((current & sequenceMask) != sequenceMask) {
+                    next = current + 1;
+                } else {
+                    //当前毫秒内，序列号已用完，取下一毫秒
+                    timestamp = nextMillis(lastTimestamp + twepoch) - twepoch;
+                    next = (timestamp << sequenceBits) | initialSequence();
+                }
+            } else {
+                next = (timestamp << sequenceBits) | initialSequence();
+            }
+
+            if (state.compareAndSet(current, next)) {
+                return toId(next);
+            }
+        }
+    }
+
+    /**
+     * 批量获取全局自增唯一ID（无锁）
+     * 每次CAS预留当前毫秒内尽可能多的连续序列号，可跨越多个毫秒
+     *
+     * @param dst    存放ID的数组
+     * @param offset 起始下标
+     * @param length 获取数量
+     */
+    @Override
+    public void nextIds(long[] dst, int offset, int length) {
+        checkRange(dst, offset, length);
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            long current = state.get();
+            long lastTimestamp = current >>> sequenceBits;
+            long timestamp = timeGen() - twepoch;
+
+            if (timestamp < lastTimestamp) {
+                //时钟回拨，按策略处理
+                timestamp = clockBackwards(lastTimestamp + twepoch, timestamp + twepoch) - twepoch;
+            }
+
+            //预留区间[first, last]，均为打包状态
+            long first;
+            long last;
+            if (timestamp == lastTimestamp && (current & sequenceMask) != sequenceMask) {
+                first = current + 1;
+                last = current + Math.min(end - i, sequenceMask - (current & sequenceMask));
+            } else {
+                if (timestamp == lastTimestamp) {
+                    //当前毫秒内，序列号已用完，取下一毫秒
+                    timestamp = nextMillis(lastTimestamp + twepoch) - twepoch;
+                }
+                first = (timestamp << sequenceBits) | initialSequence();
+                last = first + Math.min(end - i - 1, sequenceMask - (first & sequenceMask));
+            }
+
+            if (state.compareAndSet(current, last)) {
+                for (long packed = first; packed <= last; packed++) {
+                    dst[i++] = toId(packed);
+                }
+            }
+        }
+    }
+
+    /**
+     * 打包状态进行bit拼接
+     *
+     * @param packed
+     * @return
+     */
+    private long toId(long packed) {
+        return ((packed >>> sequenceBits) << timestampLeftShift) | nodeBits | (packed & sequenceMask);
+    }
+
+    @Override
+    protected boolean supportsClockSequence() {
+        return false;
+    }
+}
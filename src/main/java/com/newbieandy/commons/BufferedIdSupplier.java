@@ -0,0 +1,181 @@
+package com.newbieandy.commons;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * @Description: 预生成ID的环形缓冲区
+ * 后台线程提前调用{@link IdWorker#nextIds(long[], int, int)}把ID填入有界环形缓冲区，
+ * 剩余数量低于水位线时补满；请求线程{@link #take()}只做一次CAS，不进入IdWorker，也不会在tilNextMillis中等待
+ * 缓冲区取空时直接调用IdWorker生成（计为一次饥饿），ID仍全局唯一，但取出顺序不保证严格递增
+ * 不再使用时需调用{@link #close()}停止后台线程
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public class BufferedIdSupplier implements LongSupplier, Closeable {
+
+    //补充线程无事可做时的最长休眠时间
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final IdWorker idWorker;
+    private final long[] ring;
+    private final int mask;
+    //低于此数量时开始补充
+    private final int lowWatermark;
+    //补充时使用的临时数组，只由补充线程访问
+    private final long[] scratch;
+    //已取出的ID数（消费位置）
+    private final AtomicLong head = new AtomicLong();
+    //已放入的ID数（生产位置）
+    private final AtomicLong tail = new AtomicLong();
+    //缓冲区为空、直接调用IdWorker的次数
+    private final AtomicLong starvations = new AtomicLong();
+    //补充次数
+    private final AtomicLong refills = new AtomicLong();
+    private final Thread refiller;
+    private volatile boolean running = true;
+
+    /**
+     * 创建预生成ID缓冲区，容量8192，水位线为容量的一半
+     *
+     * @param idWorker ID生成器
+     */
+    public BufferedIdSupplier(IdWorker idWorker) {
+        this(idWorker, 8192, 4096);
+    }
+
+    /**
+     * 创建预生成ID缓冲区
+     *
+     * @param idWorker     ID生成器
+     * @param capacity     容量，必须为2的幂
+     * @param lowWatermark 水位线，剩余数量低于此值时补充，取值1-capacity
+     */
+    public BufferedIdSupplier(IdWorker idWorker, int capacity, int lowWatermark) {
+        if (null == idWorker) {
+            throw new IllegalArgumentException("ID生成器不能为空!");
+        }
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException(String.format("缓冲区容量必须为2的幂: %d", capacity));
+        }
+        if (lowWatermark < 1 || lowWatermark > capacity) {
+            throw new IllegalArgumentException(String.format("水位线必须在1-%d之间: %d", capacity, lowWatermark));
+        }
+        this.idWorker = idWorker;
+        this.ring = new long[capacity];
+        this.mask = capacity - 1;
+        this.lowWatermark = lowWatermark;
+        this.scratch = new long[capacity];
+        this.refiller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                refillLoop();
+            }
+        }, "idworker-buffer-refiller");
+        this.refiller.setDaemon(true);
+        //先同步补满一次，避免刚创建时的饥饿
+        refill();
+        this.refiller.start();
+    }
+
+    /**
+     * 获取一个ID
+     * 常见情况下只有一次CAS；缓冲区为空时退化为直接调用IdWorker
+     *
+     * @return
+     */
+    public long take() {
+        for (; ; ) {
+            long h = head.get();
+            long t = tail.get();
+            if (h >= t) {
+                starvations.incrementAndGet();
+                LockSupport.unpark(refiller);
+                return idWorker.nextId();
+            }
+            //先读值再CAS：CAS成功说明在此之前该槽位未被消费，补充线程也不会覆盖未消费的槽位
+            long id = ring[(int) (h & mask)];
+            if (head.compareAndSet(h, h + 1)) {
+                if (t - h == lowWatermark) {
+                    LockSupport.unpark(refiller);
+                }
+                return id;
+            }
+        }
+    }
+
+    @Override
+    public long getAsLong() {
+        return take();
+    }
+
+    /**
+     * 当前缓冲区剩余的ID数
+     */
+    public int getDepth() {
+        long depth = tail.get() - head.get();
+        return depth < 0 ? 0 : (int) depth;
+    }
+
+    /**
+     * 缓冲区容量
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * 缓冲区为空、直接调用IdWorker生成ID的次数
+     */
+    public long getStarvationCount() {
+        return starvations.get();
+    }
+
+    /**
+     * 补充次数
+     */
+    public long getRefillCount() {
+        return refills.get();
+    }
+
+    /**
+     * 停止后台补充线程，之后take()仍可取完剩余ID并退化为直接调用IdWorker
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(refiller);
+    }
+
+    private void refillLoop() {
+        while (running) {
+            if (getDepth() < lowWatermark) {
+                refill();
+            } else {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * 补满缓冲区，只由补充线程（及构造函数）调用
+     */
+    private void refill() {
+        long t = tail.get();
+        int n = ring.length - (int) (t - head.get());
+        if (n <= 0) {
+            return;
+        }
+        idWorker.nextIds(scratch, 0, n);
+        int start = (int) (t & mask);
+        int first = Math.min(n, ring.length - start);
+        System.arraycopy(scratch, 0, ring, start, first);
+        System.arraycopy(scratch, first, ring, 0, n - first);
+        //写入槽位后再发布生产位置
+        tail.set(t + n);
+        refills.incrementAndGet();
+    }
+}
@@ -0,0 +1,32 @@
+package com.newbieandy.commons;
+
+/**
+ * @Description: ID生成器检测到时钟回拨（本次时间小于上次生成ID的时间）时的处理策略
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public enum ClockBackwardsPolicy {
+
+    /**
+     * 直接抛出异常，不生成ID（原有行为，默认策略）
+     */
+    FAIL,
+
+    /**
+     * 回拨幅度不超过设定上限时休眠等待时钟追上，超过上限仍抛出异常
+     */
+    WAIT,
+
+    /**
+     * 借用逻辑时钟：继续沿用上次的时间标识生成ID，
+     * 序列号用完时逻辑时间+1，直到系统时钟追上逻辑时钟
+     */
+    LOGICAL_CLOCK,
+
+    /**
+     * 占用预留的时钟序列位：每次回拨时钟序列+1，按回拨后的时间继续生成ID，
+     * 时钟序列不同的ID必然不同；需创建生成器时指定时钟序列位数，
+     * 同一时间段内回拨次数超过 2^位数-1 次时无法保证唯一
+     */
+    CLOCK_SEQUENCE
+}
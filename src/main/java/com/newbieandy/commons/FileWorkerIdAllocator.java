@@ -0,0 +1,295 @@
+package com.newbieandy.commons;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 基于文件锁的工作机器ID分配器
+ * 同一处理中心的所有进程共用一个目录（本地目录或共享文件系统），每个工作机器ID对应一个租约文件，
+ * 内容为 持有者标识 + 过期时间；申请、续约、释放都在目录锁文件的排他锁内进行
+ * 租约文件不存在或已过期的工作机器ID视为空闲；持有者在后台每 ttl/3 续约一次，
+ * 并在过期前 ttl/3 即停止使用，为各节点之间的时钟偏差留出余量
+ * 不再使用时需调用{@link #close()}停止后台续约线程
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public class FileWorkerIdAllocator implements WorkerIdAllocator, Closeable {
+
+    //目录锁文件名
+    private static final String LOCK_FILE = ".lock";
+    //同一JVM内对目录锁文件加锁需串行，否则FileChannel.lock会抛出OverlappingFileLockException
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path directory;
+    private final long datacenterId;
+    private final long ttlMillis;
+    private final ScheduledExecutorService renewer;
+
+    /**
+     * 创建分配器，租约有效期30秒
+     *
+     * @param directory    租约文件目录
+     * @param datacenterId 处理中心ID
+     */
+    public FileWorkerIdAllocator(Path directory, long datacenterId) {
+        this(directory, datacenterId, 30000L);
+    }
+
+    /**
+     * 创建分配器
+     *
+     * @param directory    租约文件目录
+     * @param datacenterId 处理中心ID
+     * @param ttlMillis    租约有效期(毫秒)，不小于30
+     */
+    public FileWorkerIdAllocator(Path directory, long datacenterId, long ttlMillis) {
+        if (null == directory) {
+            throw new IllegalArgumentException("租约文件目录不能为空!");
+        }
+        if (ttlMillis < 30) {
+            throw new IllegalArgumentException(String.format("租约有效期不能小于30毫秒: %d", ttlMillis));
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("创建租约文件目录失败: " + directory, e);
+        }
+        this.directory = directory;
+        this.datacenterId = datacenterId;
+        this.ttlMillis = ttlMillis;
+        this.renewer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "idworker-lease-renewer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public WorkerIdLease acquire(IdLayout layout) {
+        if (datacenterId < 0 || datacenterId > layout.getMaxDatacenterId()) {
+            throw new IllegalArgumentException(
+                    String.format("处理中心ID不能大于%d或者小于0!", layout.getMaxDatacenterId()));
+        }
+        String owner = UUID.randomUUID().toString();
+        synchronized (JVM_LOCK) {
+            if (renewer.isShutdown()) {
+                throw new IllegalStateException("分配器已关闭: " + directory);
+            }
+            try (DirectoryLock lock = lockDirectory()) {
+                long now = System.currentTimeMillis();
+                for (long workerId = 0; workerId <= layout.getMaxWorkerId(); workerId++) {
+                    String[] content = lock.read(workerId);
+                    if (null == content || Long.parseLong(content[1]) < now) {
+                        long expireTime = now + ttlMillis;
+                        lock.write(workerId, owner, expireTime);
+                        FileLease lease = new FileLease(workerId, owner, expireTime);
+                        try {
+                            lease.renewal = renewer.scheduleWithFixedDelay(lease,
+                                    ttlMillis / 3, ttlMillis / 3, TimeUnit.MILLISECONDS);
+                        } catch (RejectedExecutionException e) {
+                            //检查之后分配器被并发关闭，撤销刚写入的租约
+                            lock.delete(workerId);
+                            throw new IllegalStateException("分配器已关闭: " + directory, e);
+                        }
+                        return lease;
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("申请工作机器ID失败: " + directory, e);
+            }
+        }
+        throw new IllegalStateException(String.format("处理中心%d没有空闲的工作机器ID!", datacenterId));
+    }
+
+    /**
+     * 停止后台续约线程，已申请的租约到期后失效
+     * 不中断正在进行的续约，避免写租约文件时被中断而留下不完整的内容
+     */
+    @Override
+    public void close() {
+        renewer.shutdown();
+    }
+
+    /**
+     * 对目录锁文件加排他锁，调用方需持有JVM_LOCK
+     */
+    private DirectoryLock lockDirectory() throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new DirectoryLock(channel, channel.lock());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private Path leaseFile(long workerId) {
+        return directory.resolve(String.format("worker-%d-%d.lease", datacenterId, workerId));
+    }
+
+    /**
+     * 持有目录锁期间读写租约文件，关闭时释放目录锁
+     */
+    private final class DirectoryLock implements Closeable {
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        DirectoryLock(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        /**
+         * 读取租约文件
+         *
+         * @return {持有者标识, 过期时间}，文件不存在或内容无法解析时返回null，视为已过期
+         */
+        String[] read(long workerId) throws IOException {
+            try {
+                String[] content = new String(Files.readAllBytes(leaseFile(workerId)), StandardCharsets.UTF_8).trim().split(" ");
+                if (content.length != 2) {
+                    return null;
+                }
+                Long.parseLong(content[1]);
+                return content;
+            } catch (NoSuchFileException | NumberFormatException e) {
+                return null;
+            }
+        }
+
+        void write(long workerId, String owner, long expireTime) throws IOException {
+            byte[] bytes = (owner + " " + expireTime).getBytes(StandardCharsets.UTF_8);
+            try (FileChannel leaseChannel = FileChannel.open(leaseFile(workerId), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                leaseChannel.write(ByteBuffer.wrap(bytes));
+                leaseChannel.force(false);
+            }
+        }
+
+        void delete(long workerId) throws IOException {
+            Files.deleteIfExists(leaseFile(workerId));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lock.release();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * 文件租约，同时作为后台续约任务
+     */
+    private class FileLease implements WorkerIdLease, Runnable {
+        private final long workerId;
+        private final String owner;
+        //本地停止使用的时间 = 过期时间 - ttl/3
+        private volatile long deadline;
+        private volatile ScheduledFuture<?> renewal;
+        //最近一次续约失败或租约失效的原因
+        private volatile Exception failure;
+
+        FileLease(long workerId, String owner, long expireTime) {
+            this.workerId = workerId;
+            this.owner = owner;
+            this.deadline = expireTime - ttlMillis / 3;
+        }
+
+        @Override
+        public long getDatacenterId() {
+            return datacenterId;
+        }
+
+        @Override
+        public long getWorkerId() {
+            return workerId;
+        }
+
+        @Override
+        public boolean isValid(long now) {
+            return now < deadline;
+        }
+
+        @Override
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /**
+         * 续约；租约已被他人占用时立即失效
+         */
+        @Override
+        public void run() {
+            synchronized (JVM_LOCK) {
+                try (DirectoryLock lock = lockDirectory()) {
+                    String[] content = lock.read(workerId);
+                    if (deadline == 0L) {
+                        cancel();
+                        return;
+                    }
+                    if (null == content || !owner.equals(content[0])) {
+                        deadline = 0L;
+                        failure = new IllegalStateException("租约文件已被删除或被其他进程占用: " + leaseFile(workerId));
+                        cancel();
+                        return;
+                    }
+                    long expireTime = System.currentTimeMillis() + ttlMillis;
+                    lock.write(workerId, owner, expireTime);
+                    deadline = expireTime - ttlMillis / 3;
+                    failure = null;
+                } catch (IOException e) {
+                    //续约失败时保留原有效期，下次继续尝试；一直失败到过期时由IdWorker报告原因
+                    failure = e;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            deadline = 0L;
+            cancel();
+            synchronized (JVM_LOCK) {
+                //续约任务可能在上面置0之前已通过检查，持锁后再置0一次
+                deadline = 0L;
+                try (DirectoryLock lock = lockDirectory()) {
+                    String[] content = lock.read(workerId);
+                    if (null != content && owner.equals(content[0])) {
+                        lock.delete(workerId);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("释放租约失败: " + leaseFile(workerId), e);
+                }
+            }
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> future = renewal;
+            if (null != future) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,713 @@
+package com.newbieandy.commons;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * @Description: 基于long geohash的内存空间索引
+ * 每个点由 ID + 经纬度 组成，按60位long geohash（相同时按ID）排序后存放在并行的基本类型数组中，不为每个点创建对象
+ * 数据分为主段和增量段：新增、跨单元移动的点先有序插入容量为C的增量段（移动至多C个元素），主段中被删除的点只打删除标记；
+ * 增量段写满或删除标记达到C个时合并：增量段被冻结并换上新的空增量段，然后在锁外把主段与冻结段归并成新的主段，
+ * 最后在写锁内替换，并重放归并期间对旧主段、冻结段的删除和原地修改
+ * 主段共N个点时，每次更新均摊 O(C + N/C) 的数据移动，其中归并的 O(N) 在锁外由触发合并的更新线程完成，
+ * 该线程的这次调用耗时与N成正比；归并期间查询和其他更新照常进行，只有增量段再次写满的更新需等待归并结束；
+ * 替换下来的旧主段留作下次归并的目标，因此主段数组占用两份内存
+ * 半径查询用{@link GeohashUtil#coverCircle(double, double, double, int, int)}得到的区间在各段上二分查找，
+ * 再按球面距离过滤；K近邻先用geohash顺序上相邻的K个点确定搜索半径，再做一次半径查询
+ * 读写锁保护：查询之间可以并发；更新持有写锁的时间只与C有关，与N无关
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public class GeohashIndex {
+
+    //半径查询覆盖使用的单元数上限
+    private static final int COVER_CELLS = 16;
+    //批量计算距离时每批的点数
+    private static final int DISTANCE_BATCH = 256;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    //归并结束的通知
+    private final Condition mergeDone = lock.writeLock().newCondition();
+    //增量段容量
+    private final int deltaCapacity;
+    //主段，归并后整体替换
+    private Segment main = new Segment(16);
+    //增量段
+    private Segment delta;
+    //归并中被冻结的增量段，不归并时为null
+    private Segment frozen;
+    //是否正在归并
+    private boolean merging;
+    //替换下来的旧主段，作为下次归并的目标重复使用；替换时持有写锁，此后不会再有查询访问它
+    private Segment spare;
+    //归并期间对旧主段、冻结段的修改，替换主段后重放
+    private final ChangeLog changes = new ChangeLog();
+    //ID -> long geohash
+    private final LongLongMap locations = new LongLongMap();
+
+    /**
+     * 创建索引，增量段容量4096
+     */
+    public GeohashIndex() {
+        this(4096);
+    }
+
+    /**
+     * 创建索引
+     *
+     * @param deltaCapacity 增量段容量，不小于1；越大合并越少，但每次插入增量段的移动量越大
+     */
+    public GeohashIndex(int deltaCapacity) {
+        if (deltaCapacity < 1) {
+            throw new IllegalArgumentException("增量段容量不能小于1: " + deltaCapacity);
+        }
+        this.deltaCapacity = deltaCapacity;
+        this.delta = new Segment(deltaCapacity);
+    }
+
+    /**
+     * 插入一个点
+     *
+     * @param id  点的ID
+     * @param lat 纬度
+     * @param lon 经度
+     * @throws IllegalArgumentException ID已存在
+     */
+    public void insert(long id, double lat, double lon) {
+        long key = GeohashUtil.encodeLong(lat, lon, GeohashUtil.MAX_BITS);
+        lock.writeLock().lock();
+        try {
+            reserveDelta();
+            if (locations.containsKey(id)) {
+                throw new IllegalArgumentException("ID已存在: " + id);
+            }
+            add(key, id, lat, lon);
+            mergeIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移动一个点；仍在同一个60位单元内时原地修改经纬度
+     *
+     * @param id  点的ID
+     * @param lat 新的纬度
+     * @param lon 新的经度
+     * @return ID不存在时返回false
+     */
+    public boolean move(long id, double lat, double lon) {
+        long key = GeohashUtil.encodeLong(lat, lon, GeohashUtil.MAX_BITS);
+        lock.writeLock().lock();
+        try {
+            reserveDelta();
+            if (!locations.containsKey(id)) {
+                return false;
+            }
+            long oldKey = locations.get(id);
+            if (oldKey == key) {
+                Segment segment = find(oldKey, id);
+                int index = segment.indexOf(oldKey, id);
+                segment.lats[index] = lat;
+                segment.lons[index] = lon;
+                if (segment != delta && merging) {
+                    changes.add(key, id, lat, lon);
+                }
+                return true;
+            }
+            delete(oldKey, id);
+            add(key, id, lat, lon);
+            mergeIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除一个点
+     *
+     * @param id 点的ID
+     * @return ID不存在时返回false
+     */
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            if (!locations.containsKey(id)) {
+                return false;
+            }
+            delete(locations.get(id), id);
+            locations.remove(id);
+            mergeIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 是否包含该ID
+     *
+     * @param id 点的ID
+     * @return
+     */
+    public boolean contains(long id) {
+        lock.readLock().lock();
+        try {
+            return locations.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 点的数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return locations.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 半径查询
+     *
+     * @param lat    圆心纬度
+     * @param lon    圆心经度
+     * @param radius 半径(单位m)
+     * @return 距离不超过半径的点的ID，无序
+     */
+    public long[] radius(double lat, double lon, double radius) {
+        final long[][] result = {new long[16]};
+        final int[] size = {0};
+        radius(lat, lon, radius, new LongConsumer() {
+            @Override
+            public void accept(long id) {
+                if (size[0] == result[0].length) {
+                    result[0] = Arrays.copyOf(result[0], size[0] * 2);
+                }
+                result[0][size[0]++] = id;
+            }
+        });
+        return Arrays.copyOf(result[0], size[0]);
+    }
+
+    /**
+     * 半径查询，逐个回调，不创建结果数组
+     * 回调在读锁内执行，不能在回调中修改索引
+     *
+     * @param lat      圆心纬度
+     * @param lon      圆心经度
+     * @param radius   半径(单位m)
+     * @param consumer 接收距离不超过半径的点的ID，无序
+     */
+    public void radius(double lat, double lon, double radius, final LongConsumer consumer) {
+        long[] ranges = cover(lat, lon, radius);
+        lock.readLock().lock();
+        try {
+            scan(ranges, lat, lon, radius, new Visitor() {
+                @Override
+                public void visit(long id, double distance) {
+                    consumer.accept(id);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * K近邻查询
+     *
+     * @param lat 纬度
+     * @param lon 经度
+     * @param k   数量
+     * @return 最近的至多k个点的ID，按距离从近到远排列
+     */
+    public long[] nearest(double lat, double lon, int k) {
+        long[] ids = new long[k];
+        int count = nearest(lat, lon, k, ids, null);
+        return count == k ? ids : Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * K近邻查询，结果写入调用方提供的数组
+     *
+     * @param lat       纬度
+     * @param lon       经度
+     * @param k         数量，不小于0
+     * @param ids       结果ID，长度至少为k，按距离从近到远排列
+     * @param distances 对应的距离(单位m)，长度至少为k；不需要时传null
+     * @return 实际找到的点数，不超过k
+     */
+    public int nearest(double lat, double lon, int k, long[] ids, double[] distances) {
+        if (k < 0) {
+            throw new IllegalArgumentException("数量不能小于0: " + k);
+        }
+        if (k == 0) {
+            return 0;
+        }
+        final NearestHeap heap = new NearestHeap(k);
+        lock.readLock().lock();
+        try {
+            long key = GeohashUtil.encodeLong(lat, lon, GeohashUtil.MAX_BITS);
+            //geohash顺序上相邻的k个点都在该半径内，因此半径查询至少能找到k个点
+            double radius = main.aroundDistance(key, lat, lon, k, heap);
+            if (heap.size < k && null != frozen) {
+                radius = Math.max(radius, frozen.aroundDistance(key, lat, lon, k - heap.size, heap));
+            }
+            if (heap.size < k) {
+                radius = Math.max(radius, delta.aroundDistance(key, lat, lon, k - heap.size, heap));
+            }
+            if (heap.size >= k) {
+                heap.size = 0;
+                long[] ranges = cover(lat, lon, radius);
+                scan(ranges, lat, lon, radius, heap);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return heap.drain(ids, distances);
+    }
+
+    /**
+     * 覆盖圆形区域的long geohash区间
+     */
+    private static long[] cover(double lat, double lon, double radius) {
+        return GeohashUtil.coverRanges(
+                GeohashUtil.coverCircle(lat, lon, radius, GeohashUtil.MAX_BITS, COVER_CELLS));
+    }
+
+    /**
+     * 在各段上扫描区间，回调距离不超过半径的点，需持有读锁
+     */
+    private void scan(long[] ranges, double lat, double lon, double radius, Visitor visitor) {
+        main.scan(ranges, lat, lon, radius, visitor);
+        if (null != frozen) {
+            frozen.scan(ranges, lat, lon, radius, visitor);
+        }
+        delta.scan(ranges, lat, lon, radius, visitor);
+    }
+
+    /**
+     * 确保增量段有空位：写满时合并，正在归并时等待归并结束；需持有写锁，期间可能暂时释放
+     * 需在检查状态之前调用，返回后到解锁之前状态不会再被其他线程修改
+     */
+    private void reserveDelta() {
+        while (delta.size == deltaCapacity) {
+            if (merging) {
+                mergeDone.awaitUninterruptibly();
+            } else {
+                merge();
+            }
+        }
+    }
+
+    /**
+     * 删除标记过多时合并，需持有写锁，在更新完成后调用
+     */
+    private void mergeIfNeeded() {
+        if (!merging && main.deleted >= deltaCapacity) {
+            merge();
+        }
+    }
+
+    /**
+     * 插入增量段，需持有写锁且增量段有空位
+     */
+    private void add(long key, long id, double lat, double lon) {
+        delta.insert(delta.lowerBound(key, id), key, id, lat, lon);
+        locations.put(id, key);
+    }
+
+    /**
+     * 点所在的段，需持有写锁且点存在
+     */
+    private Segment find(long key, long id) {
+        if (main.indexOf(key, id) >= 0) {
+            return main;
+        }
+        if (null != frozen && frozen.indexOf(key, id) >= 0) {
+            return frozen;
+        }
+        return delta;
+    }
+
+    /**
+     * 从所在段删除，需持有写锁
+     */
+    private void delete(long key, long id) {
+        Segment segment = find(key, id);
+        int index = segment.indexOf(key, id);
+        if (segment == delta) {
+            delta.removeAt(index);
+            return;
+        }
+        segment.markDeleted(index);
+        if (merging) {
+            changes.add(key, id, Double.NaN, Double.NaN);
+        }
+    }
+
+    /**
+     * 把增量段和主段归并成新的主段，需持有写锁（重入次数为1）
+     * 冻结增量段后释放写锁归并，归并期间查询和更新照常进行，最后重新加锁替换主段
+     */
+    private void merge() {
+        Segment base = main;
+        //上次归并失败时冻结段仍在，先归并它
+        Segment frozenDelta = frozen;
+        if (null == frozenDelta) {
+            frozenDelta = delta;
+            frozen = frozenDelta;
+            delta = new Segment(deltaCapacity);
+        }
+        merging = true;
+        Segment target = spare;
+        spare = null;
+        Segment merged = null;
+        lock.writeLock().unlock();
+        try {
+            merged = Segment.merge(base, frozenDelta, target);
+        } finally {
+            lock.writeLock().lock();
+            if (null != merged) {
+                main = merged;
+                frozen = null;
+                spare = base;
+                //归并读取的是未加锁的旧数据，重放期间的删除和原地修改
+                for (int i = 0; i < changes.size; i++) {
+                    int index = merged.indexOf(changes.keys[i], changes.ids[i]);
+                    if (index < 0) {
+                        continue;
+                    }
+                    if (Double.isNaN(changes.lats[i])) {
+                        merged.markDeleted(index);
+                    } else {
+                        merged.lats[index] = changes.lats[i];
+                        merged.lons[index] = changes.lons[i];
+                    }
+                }
+            }
+            changes.clear();
+            merging = false;
+            mergeDone.signalAll();
+        }
+    }
+
+    private static int compare(long key1, long id1, long key2, long id2) {
+        int c = Long.compare(key1, key2);
+        return c != 0 ? c : Long.compare(id1, id2);
+    }
+
+    /**
+     * 查询结果的接收者
+     */
+    private interface Visitor {
+        void visit(long id, double distance);
+    }
+
+    /**
+     * 按 (long geohash, ID) 排序的并行数组
+     */
+    private static final class Segment {
+        private long[] keys;
+        private long[] ids;
+        private double[] lats;
+        private double[] lons;
+        //删除标记位图
+        private long[] tombstones;
+        private int size;
+        //已打删除标记的数量
+        private int deleted;
+
+        Segment(int capacity) {
+            keys = new long[capacity];
+            ids = new long[capacity];
+            lats = new double[capacity];
+            lons = new double[capacity];
+            tombstones = new long[(capacity + 63) >>> 6];
+        }
+
+        /**
+         * 第一个不小于 (key, id) 的位置
+         */
+        int lowerBound(long key, long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(keys[mid], ids[mid], key, id) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 未删除的 (key, id) 的位置，不存在时返回-1
+         */
+        int indexOf(long key, long id) {
+            int index = lowerBound(key, id);
+            if (index < size && keys[index] == key && ids[index] == id && !isDeleted(index)) {
+                return index;
+            }
+            return -1;
+        }
+
+        boolean isDeleted(int index) {
+            return (tombstones[index >>> 6] & (1L << index)) != 0;
+        }
+
+        /**
+         * from及之后第一个打了删除标记的位置，没有时返回size
+         */
+        int nextDeleted(int from) {
+            int word = from >>> 6;
+            long bits = tombstones[word] & (-1L << from);
+            while (bits == 0) {
+                if (++word >= tombstones.length) {
+                    return size;
+                }
+                bits = tombstones[word];
+            }
+            return Math.min(size, (word << 6) + Long.numberOfTrailingZeros(bits));
+        }
+
+        void markDeleted(int index) {
+            tombstones[index >>> 6] |= 1L << index;
+            deleted++;
+        }
+
+        void insert(int index, long key, long id, double lat, double lon) {
+            move(index, index + 1, size - index);
+            keys[index] = key;
+            ids[index] = id;
+            lats[index] = lat;
+            lons[index] = lon;
+            size++;
+        }
+
+        void removeAt(int index) {
+            move(index + 1, index, size - index - 1);
+            size--;
+        }
+
+        /**
+         * 把[from, from + length)整体移动到to
+         */
+        void move(int from, int to, int length) {
+            System.arraycopy(keys, from, keys, to, length);
+            System.arraycopy(ids, from, ids, to, length);
+            System.arraycopy(lats, from, lats, to, length);
+            System.arraycopy(lons, from, lons, to, length);
+        }
+
+        /**
+         * 把两段中未删除的点归并到target，不修改原来的段
+         *
+         * @param target 重复使用的段，为null或容量不足时新建
+         */
+        static Segment merge(Segment main, Segment delta, Segment target) {
+            int capacity = main.size + delta.size;
+            Segment merged;
+            if (null == target || target.keys.length < capacity) {
+                merged = new Segment(Math.max(16, capacity + (capacity >> 3)));
+            } else {
+                merged = target;
+                Arrays.fill(merged.tombstones, 0, (merged.size + 63) >>> 6, 0L);
+                merged.size = 0;
+                merged.deleted = 0;
+            }
+            int from = 0;
+            for (int j = 0; j < delta.size; j++) {
+                if (delta.isDeleted(j)) {
+                    continue;
+                }
+                int index = main.lowerBound(delta.keys[j], delta.ids[j]);
+                merged.appendLive(main, from, index);
+                merged.appendLive(delta, j, j + 1);
+                from = index;
+            }
+            merged.appendLive(main, from, main.size);
+            return merged;
+        }
+
+        /**
+         * 把source中[from, to)未删除的点追加到末尾
+         */
+        private void appendLive(Segment source, int from, int to) {
+            while (from < to) {
+                int next = Math.min(to, source.nextDeleted(from));
+                int length = next - from;
+                System.arraycopy(source.keys, from, keys, size, length);
+                System.arraycopy(source.ids, from, ids, size, length);
+                System.arraycopy(source.lats, from, lats, size, length);
+                System.arraycopy(source.lons, from, lons, size, length);
+                size += length;
+                from = next + 1;
+            }
+        }
+
+        void scan(long[] ranges, double lat, double lon, double radius, Visitor visitor) {
+            double[] distances = null;
+            for (int r = 0; r < ranges.length; r += 2) {
+                int start = lowerBound(ranges[r], Long.MIN_VALUE);
+                int end = lowerBound(ranges[r + 1] + 1, Long.MIN_VALUE);
+                if (start < end && null == distances) {
+                    distances = new double[DISTANCE_BATCH];
+                }
+                for (int from = start; from < end; from += DISTANCE_BATCH) {
+                    int length = Math.min(DISTANCE_BATCH, end - from);
+                    GeohashUtil.distances(lat, lon, lats, lons, from, length, distances);
+                    for (int i = 0; i < length; i++) {
+                        if (distances[i] <= radius && !isDeleted(from + i)) {
+                            visitor.visit(ids[from + i], distances[i]);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 从geohash顺序上key所在位置向两侧交替取至多k个未删除的点放入heap
+         *
+         * @return 这些点中的最大距离
+         */
+        double aroundDistance(long key, double lat, double lon, int k, NearestHeap heap) {
+            int center = lowerBound(key, Long.MIN_VALUE);
+            int left = center - 1;
+            int right = center;
+            double max = 0;
+            int found = 0;
+            while (found < k && (left >= 0 || right < size)) {
+                int index;
+                if (right < size && (left < 0 || (found & 1) == 0)) {
+                    index = right++;
+                } else {
+                    index = left--;
+                }
+                if (isDeleted(index)) {
+                    continue;
+                }
+                double distance = GeohashUtil.distance(lat, lon, lats[index], lons[index]);
+                heap.visit(ids[index], distance);
+                max = Math.max(max, distance);
+                found++;
+            }
+            return max;
+        }
+    }
+
+    /**
+     * 保留距离最近的k个点的大顶堆
+     */
+    private static final class NearestHeap implements Visitor {
+        private final long[] ids;
+        private final double[] distances;
+        private int size;
+
+        NearestHeap(int k) {
+            ids = new long[k];
+            distances = new double[k];
+        }
+
+        @Override
+        public void visit(long id, double distance) {
+            if (size < ids.length) {
+                int i = size++;
+                //上浮
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (distances[parent] >= distance) {
+                        break;
+                    }
+                    ids[i] = ids[parent];
+                    distances[i] = distances[parent];
+                    i = parent;
+                }
+                ids[i] = id;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                siftDown(id, distance, size);
+            }
+        }
+
+        /**
+         * 把堆顶替换为 (id, distance) 后下沉
+         */
+        private void siftDown(long id, double distance, int size) {
+            int i = 0;
+            for (; ; ) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                ids[i] = ids[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            ids[i] = id;
+            distances[i] = distance;
+        }
+
+        /**
+         * 按距离从近到远输出并清空
+         */
+        int drain(long[] outIds, double[] outDistances) {
+            int count = size;
+            for (int n = size - 1; n >= 0; n--) {
+                outIds[n] = ids[0];
+                if (null != outDistances) {
+                    outDistances[n] = distances[0];
+                }
+                siftDown(ids[n], distances[n], n);
+            }
+            size = 0;
+            return count;
+        }
+    }
+
+    /**
+     * 归并期间的修改记录，经纬度为NaN表示删除
+     */
+    private static final class ChangeLog {
+        private long[] keys = new long[16];
+        private long[] ids = new long[16];
+        private double[] lats = new double[16];
+        private double[] lons = new double[16];
+        private int size;
+
+        void add(long key, long id, double lat, double lon) {
+            if (size == keys.length) {
+                int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+            }
+            keys[size] = key;
+            ids[size] = id;
+            lats[size] = lat;
+            lons[size] = lon;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
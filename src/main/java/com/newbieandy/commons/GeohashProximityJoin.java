@@ -0,0 +1,361 @@
+package com.newbieandy.commons;
+
+import java.util.Arrays;
+
+/**
+ * @Description: 基于geohash分桶的两路点流邻近连接
+ * 左右两路事件（如乘客与司机）各自按geohash单元分桶保存最近一段事件时间内的点；
+ * 每到达一个事件，只在对方状态中该点所在单元及周围单元的桶里查找，
+ * 把事件时间相差不超过时间窗口、距离不超过阈值的点对交给{@link Listener}，然后把该事件存入己方状态
+ * 单元精度按距离阈值选择，使单元高宽都不小于阈值，通常只需查找九宫格；高纬度地区单元变窄时自动多查几列
+ * 按事件时间淘汰状态：已见到的最大事件时间减去允许的迟到时间即为水位线，早于水位线的事件视为迟到并丢弃，
+ * 早于 水位线-时间窗口 的状态不会再被匹配，定期清除，因此内存只与一个窗口内的事件数有关
+ * 非线程安全，需由单个线程按到达顺序调用
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public class GeohashProximityJoin {
+
+    //每度纬度对应的距离(单位m)
+    private static final double METERS_PER_DEGREE = Math.PI * 6371000 / 180;
+
+    private final double maxDistance;
+    private final long windowMillis;
+    private final long latenessMillis;
+    private final Listener listener;
+    //分桶使用的geohash精度
+    private final int bits;
+    private final double latSize;
+    private final double lonSize;
+    private final long lonCells;
+    //距离阈值对应的纬度差
+    private final double maxDegrees;
+    //两次清除之间水位线至少前进的时间
+    private final long sweepMillis;
+    private final Side left = new Side();
+    private final Side right = new Side();
+    //计算距离用的临时数组
+    private double[] distances = new double[16];
+    //已见到的最大事件时间
+    private long maxEventTime = Long.MIN_VALUE;
+    //下次清除的时间
+    private long nextSweep = Long.MIN_VALUE;
+    //丢弃的迟到事件数
+    private long lateCount;
+
+    /**
+     * 创建邻近连接，不允许迟到
+     *
+     * @param maxDistance  距离阈值(单位m)，大于0
+     * @param windowMillis 时间窗口(毫秒)，两个事件的事件时间相差不超过该值才匹配
+     * @param listener     接收匹配结果
+     */
+    public GeohashProximityJoin(double maxDistance, long windowMillis, Listener listener) {
+        this(maxDistance, windowMillis, 0, listener);
+    }
+
+    /**
+     * 创建邻近连接
+     *
+     * @param maxDistance    距离阈值(单位m)，大于0
+     * @param windowMillis   时间窗口(毫秒)，两个事件的事件时间相差不超过该值才匹配
+     * @param latenessMillis 允许的迟到时间(毫秒)，事件时间比已见到的最大事件时间早不超过该值时仍正常匹配
+     * @param listener       接收匹配结果
+     */
+    public GeohashProximityJoin(double maxDistance, long windowMillis, long latenessMillis, Listener listener) {
+        if (!(maxDistance > 0)) {
+            throw new IllegalArgumentException("距离阈值必须大于0: " + maxDistance);
+        }
+        if (windowMillis < 0 || latenessMillis < 0) {
+            throw new IllegalArgumentException(
+                    String.format("时间窗口和迟到时间不能小于0: %d, %d", windowMillis, latenessMillis));
+        }
+        if (null == listener) {
+            throw new IllegalArgumentException("listener不能为空!");
+        }
+        this.maxDistance = maxDistance;
+        this.windowMillis = windowMillis;
+        this.latenessMillis = latenessMillis;
+        this.listener = listener;
+        this.maxDegrees = maxDistance / METERS_PER_DEGREE;
+        //单元高、宽（赤道处）都不小于距离阈值的最大精度
+        int bits = GeohashUtil.MAX_BITS;
+        while (bits > 1 && (180.0 / (1L << (bits >> 1)) < maxDegrees || 360.0 / (1L << (bits - (bits >> 1))) < maxDegrees)) {
+            bits--;
+        }
+        this.bits = bits;
+        this.latSize = 180.0 / (1L << (bits >> 1));
+        this.lonCells = 1L << (bits - (bits >> 1));
+        this.lonSize = 360.0 / lonCells;
+        this.sweepMillis = Math.max(1, windowMillis / 4);
+    }
+
+    /**
+     * 处理左路事件
+     *
+     * @param id        点的ID
+     * @param lat       纬度
+     * @param lon       经度
+     * @param eventTime 事件时间(毫秒)
+     * @return 本次匹配到的点对数；迟到被丢弃时返回-1
+     */
+    public int left(long id, double lat, double lon, long eventTime) {
+        return process(left, right, true, id, lat, lon, eventTime);
+    }
+
+    /**
+     * 处理右路事件
+     *
+     * @param id        点的ID
+     * @param lat       纬度
+     * @param lon       经度
+     * @param eventTime 事件时间(毫秒)
+     * @return 本次匹配到的点对数；迟到被丢弃时返回-1
+     */
+    public int right(long id, double lat, double lon, long eventTime) {
+        return process(right, left, false, id, lat, lon, eventTime);
+    }
+
+    /**
+     * 当前保存的事件数（两路之和）
+     */
+    public int getStateSize() {
+        return left.size + right.size;
+    }
+
+    /**
+     * 因迟到被丢弃的事件数
+     */
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * 分桶使用的geohash精度(二进制位数)
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    private int process(Side own, Side other, boolean isLeft, long id, double lat, double lon, long eventTime) {
+        if (maxEventTime != Long.MIN_VALUE && eventTime < maxEventTime - latenessMillis) {
+            lateCount++;
+            return -1;
+        }
+        if (eventTime > maxEventTime) {
+            maxEventTime = eventTime;
+            evict();
+        }
+        long cell = GeohashUtil.encodeLong(lat, lon, bits);
+        int matches = probe(other, isLeft, cell, id, lat, lon, eventTime);
+        own.add(cell, id, lat, lon, eventTime);
+        return matches;
+    }
+
+    /**
+     * 在对方状态中查找匹配的点
+     */
+    private int probe(Side other, boolean isLeft, long cell, long id, double lat, double lon, long eventTime) {
+        if (other.size == 0) {
+            return 0;
+        }
+        //纬度方向的行数
+        long rows = (long) Math.ceil(maxDegrees / latSize);
+        //经度方向的列数：距离阈值内的最大经度差 sin(Δλ) = sin(d) / cos(φ)
+        double angle = Math.toRadians(maxDegrees);
+        double cosLat = Math.cos(Math.toRadians(lat));
+        long from;
+        long to;
+        if (angle >= Math.PI / 2 || Math.sin(angle) >= cosLat) {
+            from = 0;
+            to = lonCells - 1;
+        } else {
+            long cols = (long) Math.ceil(Math.toDegrees(Math.asin(Math.sin(angle) / cosLat)) / lonSize);
+            if (2 * cols + 1 >= lonCells) {
+                from = 0;
+                to = lonCells - 1;
+            } else {
+                from = -cols;
+                to = cols;
+            }
+        }
+        int matches = 0;
+        long previousRow = 0;
+        for (long dLat = -rows; dLat <= rows; dLat++) {
+            long row = GeohashUtil.neighbor(cell, dLat, 0);
+            //到达南北极时行被截断，跳过重复的行
+            if (dLat > -rows && row == previousRow) {
+                continue;
+            }
+            previousRow = row;
+            for (long dLon = from; dLon <= to; dLon++) {
+                Bucket bucket = other.get(dLon == 0 ? row : GeohashUtil.neighbor(row, 0, dLon));
+                if (null != bucket) {
+                    matches += match(bucket, isLeft, id, lat, lon, eventTime);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private int match(Bucket bucket, boolean isLeft, long id, double lat, double lon, long eventTime) {
+        if (distances.length < bucket.size) {
+            distances = new double[Math.max(bucket.size, distances.length * 2)];
+        }
+        GeohashUtil.distances(lat, lon, bucket.lats, bucket.lons, 0, bucket.size, distances);
+        int matches = 0;
+        for (int i = 0; i < bucket.size; i++) {
+            if (distances[i] <= maxDistance && Math.abs(bucket.times[i] - eventTime) <= windowMillis) {
+                if (isLeft) {
+                    listener.onMatch(id, bucket.ids[i], distances[i]);
+                } else {
+                    listener.onMatch(bucket.ids[i], id, distances[i]);
+                }
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * 水位线前进足够多时清除不会再被匹配的状态
+     */
+    private void evict() {
+        //之后到达的事件时间不早于 maxEventTime - latenessMillis，与早于下面时间的状态相差必然超过窗口
+        long cutoff = maxEventTime - latenessMillis - windowMillis;
+        if (cutoff < nextSweep) {
+            return;
+        }
+        left.evict(cutoff);
+        right.evict(cutoff);
+        nextSweep = cutoff + sweepMillis;
+    }
+
+    /**
+     * 匹配结果的接收者
+     */
+    public interface Listener {
+
+        /**
+         * 匹配到一对距离不超过阈值的点
+         *
+         * @param leftId   左路点的ID
+         * @param rightId  右路点的ID
+         * @param distance 距离(单位m)
+         */
+        void onMatch(long leftId, long rightId, double distance);
+    }
+
+    /**
+     * 一路的状态：long geohash单元 -> 桶在数组中的下标 -> 桶
+     */
+    private static final class Side {
+        private final LongLongMap cells = new LongLongMap();
+        private Bucket[] buckets = new Bucket[16];
+        //已使用的下标上界
+        private int bucketCount;
+        //被清空后可重复使用的下标
+        private int[] free = new int[16];
+        private int freeCount;
+        private int size;
+
+        /**
+         * @return 不存在时返回null
+         */
+        Bucket get(long cell) {
+            int index = (int) cells.get(cell, -1);
+            return index < 0 ? null : buckets[index];
+        }
+
+        void add(long cell, long id, double lat, double lon, long time) {
+            Bucket bucket = get(cell);
+            if (null == bucket) {
+                int index;
+                if (freeCount > 0) {
+                    index = free[--freeCount];
+                } else {
+                    if (bucketCount == buckets.length) {
+                        buckets = Arrays.copyOf(buckets, bucketCount * 2);
+                    }
+                    index = bucketCount++;
+                }
+                bucket = new Bucket(cell);
+                buckets[index] = bucket;
+                cells.put(cell, index);
+            }
+            bucket.add(id, lat, lon, time);
+            size++;
+        }
+
+        void evict(long cutoff) {
+            for (int i = 0; i < bucketCount; i++) {
+                Bucket bucket = buckets[i];
+                if (null == bucket) {
+                    continue;
+                }
+                size -= bucket.evict(cutoff);
+                if (bucket.size == 0) {
+                    cells.remove(bucket.cell);
+                    buckets[i] = null;
+                    if (freeCount == free.length) {
+                        free = Arrays.copyOf(free, freeCount * 2);
+                    }
+                    free[freeCount++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个单元内的点，按到达顺序存放在并行数组中
+     */
+    private static final class Bucket {
+        //所在的long geohash单元
+        private final long cell;
+        private long[] ids = new long[4];
+        private double[] lats = new double[4];
+        private double[] lons = new double[4];
+        private long[] times = new long[4];
+        private int size;
+
+        Bucket(long cell) {
+            this.cell = cell;
+        }
+
+        void add(long id, double lat, double lon, long time) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+                times = Arrays.copyOf(times, capacity);
+            }
+            ids[size] = id;
+            lats[size] = lat;
+            lons[size] = lon;
+            times[size] = time;
+            size++;
+        }
+
+        /**
+         * 清除事件时间早于cutoff的点
+         *
+         * @return 清除的点数
+         */
+        int evict(long cutoff) {
+            int target = 0;
+            for (int i = 0; i < size; i++) {
+                if (times[i] >= cutoff) {
+                    ids[target] = ids[i];
+                    lats[target] = lats[i];
+                    lons[target] = lons[i];
+                    times[target] = times[i];
+                    target++;
+                }
+            }
+            int evicted = size - target;
+            size = target;
+            return evicted;
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package com.newbieandy.commons;
 
-import java.util.BitSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Geohash算法实现,以及距离计算算法实现
+ * 除字符串形式外，还提供以long表示的geohash（下称long geohash），便于存放在long[]中排序、检索：
+ * 二进制位从高到低依次为 0、geohash的n个二进制位、1（哨兵位）、其余补0，n取值1-60（每个字符5位，12个字符为60位）
+ * 该表示恒为非负数，精度可由最低位的1推出；排序后同一前缀下的所有子单元连续，
+ * 且父单元落在其子单元区间之内，区间可由{@link #rangeMin(long)}、{@link #rangeMax(long)}获得
  * Created by machao on 2016/7/22.
  */
 public class GeohashUtil {
@@ -13,209 +19,1125 @@ public class GeohashUtil {
     private final static char[] digits = {'0', '1', '2', '3', '4', '5', '6', '7', '8',
             '9', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'j', 'k', 'm', 'n', 'p',
             'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'};
-    private final static String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
     private final static double EARTH_RADIUS = 6371000;//赤道半径(单位m)
-    private final static HashMap<Character, Integer> lookup = new HashMap<Character, Integer>();
-    private final static Map<String, String> BORDERS = new HashMap<String, String>();
-    private final static Map<String, String> NEIGHBORS = new HashMap<String, String>();
+    //long geohash最大精度(二进制位数)
+    public final static int MAX_BITS = numbits * 2;
+    //base32字符 -> 5位值，非法字符为-1
+    private final static byte[] BASE32_INDEX = new byte[128];
+    //并行批量编解码时每个任务处理的点数上限
+    private final static int PARALLEL_THRESHOLD = 1 << 13;
 
     static {
-        int i = 0;
-        for (char c : digits)
-            lookup.put(c, i++);
-        //初始化集合
-        NEIGHBORS.put("right:even", "bc01fg45238967deuvhjyznpkmstqrwx");
-        NEIGHBORS.put("left:even", "238967debc01fg45kmstqrwxuvhjyznp");
-        NEIGHBORS.put("top:even", "p0r21436x8zb9dcf5h7kjnmqesgutwvy");
-        NEIGHBORS.put("bottom:even", "14365h7k9dcfesgujnmqp0r2twvyx8zb");
-
-        NEIGHBORS.put("right:odd", "p0r21436x8zb9dcf5h7kjnmqesgutwvy");
-        NEIGHBORS.put("left:odd", "14365h7k9dcfesgujnmqp0r2twvyx8zb");
-        NEIGHBORS.put("top:odd", "bc01fg45238967deuvhjyznpkmstqrwx");
-        NEIGHBORS.put("bottom:odd", "238967debc01fg45kmstqrwxuvhjyznp");
-
-        BORDERS.put("right:even", "bcfguvyz");
-        BORDERS.put("left:even", "0145hjnp");
-        BORDERS.put("top:even", "prxz");
-        BORDERS.put("bottom:even", "028b");
-
-        BORDERS.put("right:odd", "prxz");
-        BORDERS.put("left:odd", "028b");
-        BORDERS.put("top:odd", "bcfguvyz");
-        BORDERS.put("bottom:odd", "0145hjnp");
+        Arrays.fill(BASE32_INDEX, (byte) -1);
+        for (int j = 0; j < digits.length; j++) {
+            BASE32_INDEX[digits[j]] = (byte) j;
+            BASE32_INDEX[Character.toUpperCase(digits[j])] = (byte) j;
+        }
     }
 
     /**
      * 对geohash码进行解码
      *
      * @param geohash GeoHash 编码
-     * @return 经纬度 格式{纬度，精度}
+     * @return 单元中心点经纬度 格式{纬度，精度}
      */
     public static double[] decode(String geohash) {
-        StringBuilder buffer = new StringBuilder();
-        for (char c : geohash.toCharArray()) {
+        double[] latLon = new double[2];
+        decode(geohash, latLon);
+        return latLon;
+    }
 
-            int i = lookup.get(c) + 32;
-            buffer.append(Integer.toString(i, 2).substring(1));
+    /**
+     * 对geohash码进行解码，结果写入传入的数组，不创建任何对象
+     *
+     * @param geohash GeoHash 编码，1-12个字符
+     * @param out     长度为2时写入{纬度, 经度}；长度不小于4时再写入{纬度误差, 经度误差}，即单元半高、半宽
+     */
+    public static void decode(String geohash, double[] out) {
+        decode(toLong(geohash), out);
+    }
+
+    /**
+     * geohash编码
+     *
+     * @param lat 纬度
+     * @param lon 精度
+     * @return GeoHash编码
+     */
+    public static String encode(double lat, double lon) {
+        return encode(lat, lon, MAX_BITS / 5);
+    }
+
+    /**
+     * 指定精度的geohash编码，只计算所需的位数，不需要先按12个字符编码再截取
+     *
+     * @param lat    纬度
+     * @param lon    经度
+     * @param length 字符数，1-12
+     * @return GeoHash编码
+     */
+    public static String encode(double lat, double lon, int length) {
+        char[] buffer = new char[length > 0 ? length : 0];
+        encode(lat, lon, length, buffer, 0);
+        return new String(buffer);
+    }
+
+    /**
+     * geohash编码，写入字符数组，不创建任何对象
+     *
+     * @param lat    纬度
+     * @param lon    经度
+     * @param dst    目标数组，需至少有12个字符的空间
+     * @param offset 写入起始位置
+     */
+    public static void encode(double lat, double lon, char[] dst, int offset) {
+        encode(lat, lon, MAX_BITS / 5, dst, offset);
+    }
+
+    /**
+     * 指定精度的geohash编码，写入字符数组，不创建任何对象
+     *
+     * @param lat    纬度
+     * @param lon    经度
+     * @param length 字符数，1-12
+     * @param dst    目标数组，需至少有length个字符的空间
+     * @param offset 写入起始位置
+     */
+    public static void encode(double lat, double lon, int length, char[] dst, int offset) {
+        checkLength(length);
+        long bits = encodeBits(lat, lon, length * 5);
+        for (int i = 0, shift = length * 5 - 5; shift >= 0; i++, shift -= 5) {
+            dst[offset + i] = digits[(int) (bits >>> shift) & 0x1F];
         }
+    }
 
-        BitSet lonset = new BitSet();
-        BitSet latset = new BitSet();
+    /**
+     * geohash编码，以ASCII写入字节数组，不创建任何对象
+     *
+     * @param lat    纬度
+     * @param lon    经度
+     * @param dst    目标数组，需至少有12个字节的空间
+     * @param offset 写入起始位置
+     */
+    public static void encode(double lat, double lon, byte[] dst, int offset) {
+        encode(lat, lon, MAX_BITS / 5, dst, offset);
+    }
 
-        //even bits
-        int j = 0;
-        for (int i = 0; i < numbits * 2; i += 2) {
-            boolean isSet = false;
-            if (i < buffer.length())
-                isSet = buffer.charAt(i) == '1';
-            lonset.set(j++, isSet);
+    /**
+     * 指定精度的geohash编码，以ASCII写入字节数组，不创建任何对象
+     *
+     * @param lat    纬度
+     * @param lon    经度
+     * @param length 字符数，1-12
+     * @param dst    目标数组，需至少有length个字节的空间
+     * @param offset 写入起始位置
+     */
+    public static void encode(double lat, double lon, int length, byte[] dst, int offset) {
+        checkLength(length);
+        long bits = encodeBits(lat, lon, length * 5);
+        for (int i = 0, shift = length * 5 - 5; shift >= 0; i++, shift -= 5) {
+            dst[offset + i] = (byte) digits[(int) (bits >>> shift) & 0x1F];
         }
+    }
+
+    /**
+     * geohash编码为60位整数（12个字符，每字符5位，高位在前）
+     * 经纬度各量化为30位整数后按 经度、纬度 交替的顺序交织
+     *
+     * @param lat 纬度
+     * @param lon 经度
+     * @return geohash的二进制位
+     */
+    public static long encodeBits(double lat, double lon) {
+        long latBits = quantize(lat, -90, 90, numbits);
+        long lonBits = quantize(lon, -180, 180, numbits);
+        return (spread(lonBits) << 1) | spread(latBits);
+    }
 
-        //odd bits
-        j = 0;
-        for (int i = 1; i < numbits * 2; i += 2) {
-            boolean isSet = false;
-            if (i < buffer.length())
-                isSet = buffer.charAt(i) == '1';
-            latset.set(j++, isSet);
+    /**
+     * 指定精度的geohash编码为整数（右对齐，高位在前），结果等于60位编码右移60-bits位
+     * 经度量化为bits-bits/2位、纬度量化为bits/2位后交织
+     *
+     * @param lat  纬度
+     * @param lon  经度
+     * @param bits 精度(二进制位数，1-60)
+     * @return geohash的二进制位
+     */
+    public static long encodeBits(double lat, double lon, int bits) {
+        checkBits(bits);
+        int latBits = bits >> 1;
+        return interleave(quantize(lat, -90, 90, latBits), quantize(lon, -180, 180, bits - latBits), bits);
+    }
+
+    /**
+     * {@link #encodeBits(double, double, int)}的逆运算：解码为单元中心点
+     *
+     * @param hash geohash的二进制位（右对齐）
+     * @param bits 精度(二进制位数，1-60)
+     * @param out  长度为2时写入{纬度, 经度}；长度不小于4时再写入{纬度误差, 经度误差}，即单元半高、半宽
+     */
+    public static void decodeBits(long hash, int bits, double[] out) {
+        checkBits(bits);
+        int latBits = bits >> 1;
+        int lonBits = bits - latBits;
+        double latError = 90.0 / (1L << latBits);
+        double lonError = 180.0 / (1L << lonBits);
+        out[0] = -90 + (2 * latIndex(hash, bits) + 1) * latError;
+        out[1] = -180 + (2 * lonIndex(hash, bits) + 1) * lonError;
+        if (out.length >= 4) {
+            out[2] = latError;
+            out[3] = lonError;
+        }
+    }
+
+    /**
+     * 把坐标量化为[0, 2^bits)的整数网格坐标，与逐次二分取中间值的结果一致，超出范围时取边界值
+     *
+     * @param value   坐标
+     * @param floor   下限
+     * @param ceiling 上限
+     * @param bits    位数
+     * @return
+     */
+    private static long quantize(double value, double floor, double ceiling, int bits) {
+        long max = (1L << bits) - 1;
+        long cell = (long) Math.floor((value - floor) / (ceiling - floor) * (1L << bits));
+        if (cell < 0 || value != value) {
+            return 0;
+        }
+        return cell > max ? max : cell;
+    }
+
+    /**
+     * 把低32位展开到偶数位上：第i位移到第2i位
+     *
+     * @param x
+     * @return
+     */
+    private static long spread(long x) {
+        x &= 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+
+    /**
+     * 获取九个点的矩形编码
+     * 在经纬度网格坐标上加减1得到相邻单元，经度方向首尾相接，纬度方向到达南北极时不再移动
+     *
+     * @param geohash 1-12个字符
+     * @return {自身, 上, 下, 右, 左, 左上, 右上, 右下, 左下}
+     */
+    public static String[] getGeoHashExpand(String geohash) {
+        String[] expand = new String[9];
+        getGeoHashExpand(geohash, expand);
+        return expand;
+    }
+
+    /**
+     * 按指定精度编码后获取九个点的矩形编码
+     *
+     * @param lat    纬度
+     * @param lon    经度
+     * @param length 字符数，1-12
+     * @return {自身, 上, 下, 右, 左, 左上, 右上, 右下, 左下}
+     */
+    public static String[] getGeoHashExpand(double lat, double lon, int length) {
+        return getGeoHashExpand(encode(lat, lon, length));
+    }
+
+    /**
+     * 获取九个点的矩形编码，结果写入调用方提供的数组
+     *
+     * @param geohash 1-12个字符
+     * @param out     结果数组，长度至少为9，顺序同{@link #getGeoHashExpand(String)}
+     */
+    public static void getGeoHashExpand(String geohash, String[] out) {
+        if (null == geohash) {
+            throw new IllegalArgumentException("geohash不能为空!");
+        }
+        if (out.length < 9) {
+            throw new IllegalArgumentException(String.format("结果数组长度不能小于9: %d", out.length));
+        }
+        //一次解出行列号，算出全部9个单元
+        long[] cells = new long[9];
+        neighbors(toLong(geohash), cells);
+        out[0] = geohash;
+        for (int i = 1; i < 9; i++) {
+            out[i] = toString(cells[i]);
         }
+    }
 
-        double lon = decode(lonset, -180, 180);
-        double lat = decode(latset, -90, 90);
+    //=======================================long geohash===============
 
-        return new double[]{lat, lon};
+    /**
+     * 编码为long geohash
+     *
+     * @param lat  纬度
+     * @param lon  经度
+     * @param bits 精度(二进制位数，1-60)，字符数*5
+     * @return long geohash
+     */
+    public static long encodeLong(double lat, double lon, int bits) {
+        return pack(encodeBits(lat, lon, bits), bits);
     }
 
     /**
-     * 获取中间位
+     * 字符串geohash转long geohash
      *
-     * @param bs
-     * @param floor
-     * @param ceiling
+     * @param geohash 1-12个字符
+     * @return long geohash
+     */
+    public static long toLong(String geohash) {
+        int length = geohash.length();
+        if (length == 0 || length * 5 > MAX_BITS) {
+            throw new IllegalArgumentException("geohash长度必须在1-12之间: " + geohash);
+        }
+        long bits = 0;
+        for (int i = 0; i < length; i++) {
+            bits = (bits << 5) | base32Index(geohash.charAt(i), geohash);
+        }
+        return pack(bits, length * 5);
+    }
+
+    /**
+     * long geohash转字符串geohash
+     * 精度不是5的整数倍时，末尾不足一个字符的位不输出
+     *
+     * @param geohash long geohash
      * @return
      */
-    private static double decode(BitSet bs, double floor, double ceiling) {
-        double mid = 0;
-        for (int i = 0; i < bs.length(); i++) {
-            mid = (floor + ceiling) / 2;
-            if (bs.get(i))
-                floor = mid;
-            else
-                ceiling = mid;
+    public static String toString(long geohash) {
+        int bits = bitsOf(geohash);
+        long hash = hashOf(geohash);
+        int length = bits / 5;
+        char[] buffer = new char[length];
+        for (int i = 0; i < length; i++) {
+            buffer[i] = digits[(int) (hash >>> (bits - 5 * (i + 1))) & 0x1F];
         }
-        return mid;
+        return new String(buffer);
     }
 
     /**
-     * geohash编码
+     * long geohash的精度(二进制位数)
      *
-     * @param lat 纬度
-     * @param lon 精度
-     * @return GeoHash编码
+     * @param geohash long geohash
+     * @return
      */
-    public static String encode(double lat, double lon) {
-        BitSet latbits = getBits(lat, -90, 90);
-        BitSet lonbits = getBits(lon, -180, 180);
-        StringBuilder buffer = new StringBuilder();
-        for (int i = 0; i < numbits; i++) {
-            buffer.append((lonbits.get(i)) ? '1' : '0');
-            buffer.append((latbits.get(i)) ? '1' : '0');
+    public static int bitsOf(long geohash) {
+        int bits = 62 - Long.numberOfTrailingZeros(geohash);
+        if (geohash <= 0 || bits < 1 || bits > MAX_BITS) {
+            throw new IllegalArgumentException("非法的long geohash: " + geohash);
         }
-        return base32(Long.parseLong(buffer.toString(), 2));
+        return bits;
     }
 
     /**
-     * 获取中间值
+     * long geohash的二进制位（右对齐，不含哨兵位）
      *
-     * @param lat
-     * @param floor
-     * @param ceiling
+     * @param geohash long geohash
      * @return
      */
-    private static BitSet getBits(double lat, double floor, double ceiling) {
-        BitSet buffer = new BitSet(numbits);
-        for (int i = 0; i < numbits; i++) {
-            double mid = (floor + ceiling) / 2;
-            if (lat >= mid) {
-                buffer.set(i);
-                floor = mid;
-            } else {
-                ceiling = mid;
-            }
+    public static long hashOf(long geohash) {
+        return geohash >>> (63 - bitsOf(geohash));
+    }
+
+    /**
+     * long geohash解码为单元中心点
+     *
+     * @param geohash long geohash
+     * @param out     长度为2时写入{纬度, 经度}；长度不小于4时再写入{纬度误差, 经度误差}，即单元半高、半宽
+     */
+    public static void decode(long geohash, double[] out) {
+        int bits = bitsOf(geohash);
+        decodeBits(geohash >>> (63 - bits), bits, out);
+    }
+
+    /**
+     * long geohash单元的边界
+     *
+     * @param geohash long geohash
+     * @param out     结果{最小纬度, 最小经度, 最大纬度, 最大经度}，长度至少为4
+     */
+    public static void bounds(long geohash, double[] out) {
+        int bits = bitsOf(geohash);
+        long hash = geohash >>> (63 - bits);
+        int latBits = bits >> 1;
+        int lonBits = bits - latBits;
+        double latSize = 180.0 / (1L << latBits);
+        double lonSize = 360.0 / (1L << lonBits);
+        out[0] = -90 + latIndex(hash, bits) * latSize;
+        out[1] = -180 + lonIndex(hash, bits) * lonSize;
+        out[2] = out[0] + latSize;
+        out[3] = out[1] + lonSize;
+    }
+
+    /**
+     * 相邻单元
+     * 经度方向首尾相接，纬度方向到达南北极时不再移动（返回同一行的单元）
+     *
+     * @param geohash long geohash
+     * @param dLat    纬度方向移动的格数，正数向北
+     * @param dLon    经度方向移动的格数，正数向东
+     * @return
+     */
+    public static long neighbor(long geohash, long dLat, long dLon) {
+        int bits = bitsOf(geohash);
+        long hash = geohash >>> (63 - bits);
+        int latBits = bits >> 1;
+        int lonBits = bits - latBits;
+        long latMax = (1L << latBits) - 1;
+        long lat = latIndex(hash, bits) + dLat;
+        lat = lat < 0 ? 0 : (lat > latMax ? latMax : lat);
+        long lon = (lonIndex(hash, bits) + dLon) & ((1L << lonBits) - 1);
+        return pack(interleave(lat, lon, bits), bits);
+    }
+
+    /**
+     * 九宫格：自身及周围8个单元，顺序与{@link #getGeoHashExpand(String)}一致
+     * {自身, 上, 下, 右, 左, 左上, 右上, 右下, 左下}
+     *
+     * @param geohash long geohash
+     * @param out     结果数组，长度至少为9
+     */
+    public static void neighbors(long geohash, long[] out) {
+        int bits = bitsOf(geohash);
+        long hash = geohash >>> (63 - bits);
+        int latBits = bits >> 1;
+        int lonBits = bits - latBits;
+        long latMax = (1L << latBits) - 1;
+        long lonMask = (1L << lonBits) - 1;
+        long lat = latIndex(hash, bits);
+        long lon = lonIndex(hash, bits);
+        long top = lat < latMax ? lat + 1 : lat;
+        long bottom = lat > 0 ? lat - 1 : lat;
+        long right = (lon + 1) & lonMask;
+        long left = (lon - 1) & lonMask;
+        out[0] = geohash;
+        out[1] = pack(interleave(top, lon, bits), bits);
+        out[2] = pack(interleave(bottom, lon, bits), bits);
+        out[3] = pack(interleave(lat, right, bits), bits);
+        out[4] = pack(interleave(lat, left, bits), bits);
+        out[5] = pack(interleave(top, left, bits), bits);
+        out[6] = pack(interleave(top, right, bits), bits);
+        out[7] = pack(interleave(bottom, right, bits), bits);
+        out[8] = pack(interleave(bottom, left, bits), bits);
+    }
+
+    /**
+     * 祖先单元
+     *
+     * @param geohash long geohash
+     * @param bits    祖先的精度，不大于当前精度
+     * @return
+     */
+    public static long parent(long geohash, int bits) {
+        int current = bitsOf(geohash);
+        if (bits < 1 || bits > current) {
+            throw new IllegalArgumentException(String.format("祖先精度必须在1-%d之间: %d", current, bits));
         }
-        return buffer;
+        return pack(geohash >>> (63 - bits), bits);
     }
 
     /**
-     * base32 编码
+     * 子单元
      *
-     * @param i
+     * @param geohash   long geohash
+     * @param extraBits 子单元比当前多出的精度
+     * @param index     子单元序号，0 - 2^extraBits-1，按geohash顺序
      * @return
      */
-    private static String base32(long i) {
-        char[] buf = new char[65];
-        int charPos = 64;
-        boolean negative = (i < 0);
-        if (!negative)
-            i = -i;
-        while (i <= -32) {
-            buf[charPos--] = digits[(int) (-(i % 32))];
-            i /= 32;
+    public static long child(long geohash, int extraBits, long index) {
+        int bits = bitsOf(geohash) + extraBits;
+        checkBits(bits);
+        if (extraBits < 1 || index < 0 || index >= (1L << extraBits)) {
+            throw new IllegalArgumentException(String.format("子单元序号越界: %d", index));
         }
-        buf[charPos] = digits[(int) (-i)];
+        return pack((hashOf(geohash) << extraBits) | index, bits);
+    }
+
+    /**
+     * 是否为祖先单元或自身
+     *
+     * @param ancestor long geohash
+     * @param geohash  long geohash
+     * @return
+     */
+    public static boolean contains(long ancestor, long geohash) {
+        return geohash >= rangeMin(ancestor) && geohash <= rangeMax(ancestor);
+    }
 
-        if (negative)
-            buf[--charPos] = '-';
-        return new String(buf, charPos, (65 - charPos));
+    /**
+     * 单元及其所有子单元中最小的long geohash
+     *
+     * @param geohash long geohash
+     * @return
+     */
+    public static long rangeMin(long geohash) {
+        return geohash - (Long.lowestOneBit(geohash) - 1);
     }
 
+    /**
+     * 单元及其所有子单元中最大的long geohash
+     *
+     * @param geohash long geohash
+     * @return
+     */
+    public static long rangeMax(long geohash) {
+        return geohash + (Long.lowestOneBit(geohash) - 1);
+    }
 
     /**
-     * 获取九个点的矩形编码
+     * 比较两个long geohash，相同精度下与字符串geohash的字典序一致，父单元排在其子单元区间的中间
      *
-     * @param geohash
+     * @param a
+     * @param b
      * @return
      */
-    public static String[] getGeoHashExpand(String geohash) {
-        try {
-            String geohashTop = calculateAdjacent(geohash, "top");
-            String geohashBottom = calculateAdjacent(geohash, "bottom");
-            String geohashRight = calculateAdjacent(geohash, "right");
-            String geohashLeft = calculateAdjacent(geohash, "left");
-            String geohashTopLeft = calculateAdjacent(geohashLeft, "top");
-            String geohashTopRight = calculateAdjacent(geohashRight, "top");
-            String geohashBottomRight = calculateAdjacent(geohashRight, "bottom");
-            String geohashBottomLeft = calculateAdjacent(geohashLeft, "bottom");
-            String[] expand = {geohash, geohashTop, geohashBottom, geohashRight, geohashLeft, geohashTopLeft, geohashTopRight, geohashBottomRight, geohashBottomLeft};
-            return expand;
-        } catch (Exception e) {
-            return null;
+    public static int compare(long a, long b) {
+        return Long.compare(a, b);
+    }
+
+    /**
+     * 校验字符数
+     *
+     * @param length
+     */
+    private static void checkLength(int length) {
+        if (length < 1 || length * 5 > MAX_BITS) {
+            throw new IllegalArgumentException(String.format("geohash长度必须在1-%d之间: %d", MAX_BITS / 5, length));
+        }
+    }
+
+    /**
+     * 校验精度
+     *
+     * @param bits
+     */
+    private static void checkBits(int bits) {
+        if (bits < 1 || bits > MAX_BITS) {
+            throw new IllegalArgumentException(String.format("geohash精度必须在1-%d位之间: %d", MAX_BITS, bits));
         }
     }
 
     /**
-     * 分别计算每个点的矩形编码
+     * 二进制位加上哨兵位，左对齐到第62位
+     *
+     * @param hash 右对齐的geohash二进制位
+     * @param bits 位数
+     * @return
+     */
+    private static long pack(long hash, int bits) {
+        return ((hash << 1) | 1L) << (MAX_BITS + 2 - bits);
+    }
+
+    /**
+     * base32字符对应的值
      *
-     * @param srcHash
-     * @param dir
+     * @param c
+     * @param geohash 用于异常信息
      * @return
      */
-    private static String calculateAdjacent(String srcHash, String dir) {
-        //转换为小写
-        srcHash = srcHash.toLowerCase();
-        //取最末尾的字符
-        char lastChr = srcHash.charAt(srcHash.length() - 1);
-        //判断奇偶
-        int a = srcHash.length() % 2;
-        String type = (a > 0) ? "odd" : "even";
-        //取geohash
-        String base = srcHash.substring(0, srcHash.length() - 1);
-        //
-        if (BORDERS.get(dir + ":" + type).indexOf(lastChr) != -1) {
-            base = calculateAdjacent(base, dir);
+    private static int base32Index(char c, String geohash) {
+        int value = c < 128 ? BASE32_INDEX[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("geohash包含非法字符'" + c + "': " + geohash);
+        }
+        return value;
+    }
+
+    /**
+     * 从geohash二进制位中取出纬度网格坐标（bits/2位）
+     */
+    private static long latIndex(long hash, int bits) {
+        //奇数位时末尾补一个纬度位，凑成经纬度位数相同
+        int pad = bits & 1;
+        return compact(hash << pad) >>> pad;
+    }
+
+    /**
+     * 从geohash二进制位中取出经度网格坐标（bits-bits/2位）
+     */
+    private static long lonIndex(long hash, int bits) {
+        int pad = bits & 1;
+        return compact((hash << pad) >>> 1);
+    }
+
+    /**
+     * 经纬度网格坐标交织为geohash二进制位
+     */
+    private static long interleave(long lat, long lon, int bits) {
+        int pad = bits & 1;
+        return ((spread(lon) << 1) | spread(lat << pad)) >>> pad;
+    }
+
+    /**
+     * {@link #spread(long)}的逆运算：取出偶数位压缩到低32位
+     *
+     * @param x
+     * @return
+     */
+    private static long compact(long x) {
+        x &= 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+        return x;
+    }
+
+    //=======================================批量编解码===============
+
+    /**
+     * 批量编码为long geohash
+     *
+     * @param lats 纬度
+     * @param lons 经度，长度不小于lats.length
+     * @param bits 精度(二进制位数，1-60)
+     * @param out  结果，out[i]对应第i个点，长度不小于lats.length
+     */
+    public static void encodeLong(double[] lats, double[] lons, int bits, long[] out) {
+        checkBits(bits);
+        checkLength(lats.length, lons.length, out.length);
+        encodeLong(lats, 0, lons, 0, bits, out, 0, 0, lats.length);
+    }
+
+    /**
+     * 批量编码为long geohash，处理各缓冲区从position开始的lats.remaining()个元素，不改变position
+     *
+     * @param lats 纬度
+     * @param lons 经度
+     * @param bits 精度(二进制位数，1-60)
+     * @param out  结果
+     */
+    public static void encodeLong(DoubleBuffer lats, DoubleBuffer lons, int bits, LongBuffer out) {
+        checkBits(bits);
+        checkLength(lats.remaining(), lons.remaining(), out.remaining());
+        encodeLongTask(lats, lons, bits, out).apply(0, lats.remaining());
+    }
+
+    /**
+     * 用ForkJoin公共线程池并行批量编码为long geohash，参数同{@link #encodeLong(double[], double[], int, long[])}
+     */
+    public static void parallelEncodeLong(final double[] lats, final double[] lons, final int bits, final long[] out) {
+        checkBits(bits);
+        checkLength(lats.length, lons.length, out.length);
+        parallel(new RangeTask() {
+            @Override
+            public void apply(int from, int to) {
+                encodeLong(lats, 0, lons, 0, bits, out, 0, from, to);
+            }
+        }, 0, lats.length);
+    }
+
+    /**
+     * 用ForkJoin公共线程池并行批量编码为long geohash，参数同{@link #encodeLong(DoubleBuffer, DoubleBuffer, int, LongBuffer)}
+     */
+    public static void parallelEncodeLong(DoubleBuffer lats, DoubleBuffer lons, int bits, LongBuffer out) {
+        checkBits(bits);
+        checkLength(lats.remaining(), lons.remaining(), out.remaining());
+        parallel(encodeLongTask(lats, lons, bits, out), 0, lats.remaining());
+    }
+
+    /**
+     * 批量编码为12个字符的geohash，以ASCII写入字节数组，每个点占12个字节，不创建任何对象
+     *
+     * @param lats 纬度
+     * @param lons 经度，长度不小于lats.length
+     * @param out  结果，第i个点写入[12 * i, 12 * i + 12)，长度不小于12 * lats.length
+     */
+    public static void encode(double[] lats, double[] lons, byte[] out) {
+        checkLength(lats.length, lons.length, out.length / 12);
+        encodeTask(lats, lons, out).apply(0, lats.length);
+    }
+
+    /**
+     * 用ForkJoin公共线程池并行批量编码为12个字符的geohash，参数同{@link #encode(double[], double[], byte[])}
+     */
+    public static void parallelEncode(double[] lats, double[] lons, byte[] out) {
+        checkLength(lats.length, lons.length, out.length / 12);
+        parallel(encodeTask(lats, lons, out), 0, lats.length);
+    }
+
+    /**
+     * 批量解码long geohash为单元中心点
+     *
+     * @param geohashes long geohash
+     * @param lats      中心点纬度，长度不小于geohashes.length
+     * @param lons      中心点经度，长度不小于geohashes.length
+     */
+    public static void decode(long[] geohashes, double[] lats, double[] lons) {
+        checkLength(geohashes.length, lats.length, lons.length);
+        decode(geohashes, 0, lats, 0, lons, 0, 0, geohashes.length);
+    }
+
+    /**
+     * 批量解码long geohash为单元中心点，处理各缓冲区从position开始的geohashes.remaining()个元素，不改变position
+     *
+     * @param geohashes long geohash
+     * @param lats      中心点纬度
+     * @param lons      中心点经度
+     */
+    public static void decode(LongBuffer geohashes, DoubleBuffer lats, DoubleBuffer lons) {
+        checkLength(geohashes.remaining(), lats.remaining(), lons.remaining());
+        decodeTask(geohashes, lats, lons).apply(0, geohashes.remaining());
+    }
+
+    /**
+     * 用ForkJoin公共线程池并行批量解码，参数同{@link #decode(long[], double[], double[])}
+     */
+    public static void parallelDecode(final long[] geohashes, final double[] lats, final double[] lons) {
+        checkLength(geohashes.length, lats.length, lons.length);
+        parallel(new RangeTask() {
+            @Override
+            public void apply(int from, int to) {
+                decode(geohashes, 0, lats, 0, lons, 0, from, to);
+            }
+        }, 0, geohashes.length);
+    }
+
+    /**
+     * 用ForkJoin公共线程池并行批量解码，参数同{@link #decode(LongBuffer, DoubleBuffer, DoubleBuffer)}
+     */
+    public static void parallelDecode(LongBuffer geohashes, DoubleBuffer lats, DoubleBuffer lons) {
+        checkLength(geohashes.remaining(), lats.remaining(), lons.remaining());
+        parallel(decodeTask(geohashes, lats, lons), 0, geohashes.remaining());
+    }
+
+    /**
+     * 编码数组中的[from, to)，各数组从各自的起始位置开始
+     */
+    private static void encodeLong(double[] lats, int latOffset, double[] lons, int lonOffset, int bits,
+                                   long[] out, int outOffset, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[outOffset + i] = pack(encodeBits(lats[latOffset + i], lons[lonOffset + i], bits), bits);
+        }
+    }
+
+    /**
+     * 解码数组中的[from, to)，各数组从各自的起始位置开始
+     */
+    private static void decode(long[] geohashes, int offset, double[] lats, int latOffset,
+                               double[] lons, int lonOffset, int from, int to) {
+        for (int i = from; i < to; i++) {
+            long geohash = geohashes[offset + i];
+            int bits = bitsOf(geohash);
+            long hash = geohash >>> (63 - bits);
+            int latBits = bits >> 1;
+            double latError = 90.0 / (1L << latBits);
+            double lonError = 180.0 / (1L << (bits - latBits));
+            lats[latOffset + i] = -90 + (2 * latIndex(hash, bits) + 1) * latError;
+            lons[lonOffset + i] = -180 + (2 * lonIndex(hash, bits) + 1) * lonError;
+        }
+    }
+
+    /**
+     * 缓冲区批量编码：都由数组实现时直接访问数组，否则逐个按绝对位置读写
+     */
+    private static RangeTask encodeLongTask(final DoubleBuffer lats, final DoubleBuffer lons, final int bits, final LongBuffer out) {
+        final int latStart = lats.position();
+        final int lonStart = lons.position();
+        final int outStart = out.position();
+        if (lats.hasArray() && lons.hasArray() && out.hasArray()) {
+            return new RangeTask() {
+                @Override
+                public void apply(int from, int to) {
+                    encodeLong(lats.array(), lats.arrayOffset() + latStart, lons.array(), lons.arrayOffset() + lonStart,
+                            bits, out.array(), out.arrayOffset() + outStart, from, to);
+                }
+            };
+        }
+        return new RangeTask() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    out.put(outStart + i, pack(encodeBits(lats.get(latStart + i), lons.get(lonStart + i), bits), bits));
+                }
+            }
+        };
+    }
+
+    private static RangeTask encodeTask(final double[] lats, final double[] lons, final byte[] out) {
+        return new RangeTask() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    encode(lats[i], lons[i], out, 12 * i);
+                }
+            }
+        };
+    }
+
+    private static RangeTask decodeTask(final LongBuffer geohashes, final DoubleBuffer lats, final DoubleBuffer lons) {
+        final int start = geohashes.position();
+        final int latStart = lats.position();
+        final int lonStart = lons.position();
+        if (geohashes.hasArray() && lats.hasArray() && lons.hasArray()) {
+            return new RangeTask() {
+                @Override
+                public void apply(int from, int to) {
+                    decode(geohashes.array(), geohashes.arrayOffset() + start, lats.array(), lats.arrayOffset() + latStart,
+                            lons.array(), lons.arrayOffset() + lonStart, from, to);
+                }
+            };
+        }
+        return new RangeTask() {
+            @Override
+            public void apply(int from, int to) {
+                double[] center = new double[2];
+                for (int i = from; i < to; i++) {
+                    decode(geohashes.get(start + i), center);
+                    lats.put(latStart + i, center[0]);
+                    lons.put(lonStart + i, center[1]);
+                }
+            }
+        };
+    }
+
+    /**
+     * 校验各列长度，后面的列不能比第一列短
+     */
+    private static void checkLength(int length, int length1, int length2) {
+        if (length1 < length || length2 < length) {
+            throw new IllegalArgumentException(String.format("数组长度不足: 需要%d, 实际%d和%d", length, length1, length2));
+        }
+    }
+
+    /**
+     * 在ForkJoin公共线程池中把[from, to)二分到不超过PARALLEL_THRESHOLD后并行执行
+     */
+    private static void parallel(RangeTask task, int from, int to) {
+        if (to - from <= PARALLEL_THRESHOLD) {
+            task.apply(from, to);
+        } else {
+            ForkJoinPool.commonPool().invoke(new RangeAction(task, from, to));
+        }
+    }
+
+    /**
+     * 对下标区间[from, to)的批量操作
+     */
+    private interface RangeTask {
+        void apply(int from, int to);
+    }
+
+    private static final class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final RangeTask task;
+        private final int from;
+        private final int to;
+
+        RangeAction(RangeTask task, int from, int to) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                task.apply(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeAction(task, from, mid), new RangeAction(task, mid, to));
+        }
+    }
+
+    //=======================================区域覆盖===============
+
+    /**
+     * 用一组long geohash单元覆盖圆形区域（球面距离不超过半径的所有点）
+     * 从1位精度开始逐级二分：完全在区域内的单元直接输出，与区域相交的单元继续细分，
+     * 直到达到最大精度或单元数将超过上限，此时剩余的相交单元以当前精度输出；因此各单元精度可能不同
+     * 结果保证覆盖整个区域，按{@link #compare(long, long)}排序且互不包含，
+     * 可用{@link #coverRanges(long[])}合并为连续区间后在有序存储上做范围扫描
+     *
+     * @param lat      圆心纬度
+     * @param lon      圆心经度
+     * @param radius   半径(单位m)
+     * @param maxBits  最大精度(二进制位数，1-60)
+     * @param maxCells 单元数上限，不小于2
+     * @return long geohash单元
+     */
+    public static long[] coverCircle(double lat, double lon, double radius, int maxBits, int maxCells) {
+        checkLatLon(lat, lon);
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("半径不能小于0: " + radius);
+        }
+        return cover(new CircleRegion(lat, lon, radius), maxBits, maxCells);
+    }
+
+    /**
+     * 用一组long geohash单元覆盖经纬度矩形，规则同{@link #coverCircle(double, double, double, int, int)}
+     * 最小经度大于最大经度时表示跨越180度经线的矩形
+     *
+     * @param minLat   最小纬度
+     * @param minLon   最小经度（西边界）
+     * @param maxLat   最大纬度
+     * @param maxLon   最大经度（东边界）
+     * @param maxBits  最大精度(二进制位数，1-60)
+     * @param maxCells 单元数上限，不小于2
+     * @return long geohash单元
+     */
+    public static long[] coverBox(double minLat, double minLon, double maxLat, double maxLon, int maxBits, int maxCells) {
+        checkLatLon(minLat, minLon);
+        checkLatLon(maxLat, maxLon);
+        if (minLat > maxLat) {
+            throw new IllegalArgumentException(String.format("最小纬度不能大于最大纬度: %s > %s", minLat, maxLat));
+        }
+        return cover(new BoxRegion(minLat, minLon, maxLat, maxLon), maxBits, maxCells);
+    }
+
+    /**
+     * 把单元合并为long geohash的连续闭区间
+     * 精度不低于单元的long geohash在某个单元内，当且仅当它落在对应区间内；
+     * 相邻单元之间只隔着它们共同祖先的值，合并时一并纳入，只会多出精度更低的单元
+     *
+     * @param cells 按{@link #compare(long, long)}排序的单元，如{@link #coverCircle(double, double, double, int, int)}的结果
+     * @return {区间1最小值, 区间1最大值, 区间2最小值, 区间2最大值, ...}
+     */
+    public static long[] coverRanges(long[] cells) {
+        long[] ranges = new long[cells.length * 2];
+        int size = 0;
+        for (long cell : cells) {
+            long min = rangeMin(cell);
+            long max = rangeMax(cell);
+            if (size > 0 && min - ranges[size - 1] <= 2) {
+                ranges[size - 1] = Math.max(ranges[size - 1], max);
+            } else {
+                ranges[size++] = min;
+                ranges[size++] = max;
+            }
+        }
+        return Arrays.copyOf(ranges, size);
+    }
+
+    /**
+     * 逐级二分覆盖区域
+     */
+    private static long[] cover(Region region, int maxBits, int maxCells) {
+        checkBits(maxBits);
+        if (maxCells < 2) {
+            throw new IllegalArgumentException("单元数上限不能小于2: " + maxCells);
+        }
+        //已确定的单元(long geohash)
+        long[] result = new long[16];
+        int resultSize = 0;
+        //当前精度下与区域相交、待细分的单元(右对齐的二进制位)，初始为0位精度的整个地球
+        long[] partial = {0L};
+        int partialSize = 1;
+        long[] next = new long[16];
+        double[] bounds = new double[4];
+        int bits = 0;
+        while (bits < maxBits && partialSize > 0) {
+            int childBits = bits + 1;
+            int nextSize = 0;
+            int inside = 0;
+            if (next.length < partialSize * 2) {
+                next = new long[partialSize * 2];
+            }
+            for (int i = 0; i < partialSize; i++) {
+                for (long bit = 0; bit < 2; bit++) {
+                    long child = (partial[i] << 1) | bit;
+                    cellBounds(child, childBits, bounds);
+                    int relation = region.relate(bounds);
+                    if (relation == Region.INSIDE) {
+                        //暂存在next尾部，确认不超过上限后再转入结果
+                        next[next.length - 1 - inside++] = child;
+                    } else if (relation == Region.PARTIAL) {
+                        next[nextSize++] = child;
+                    }
+                }
+            }
+            if (bits > 0 && resultSize + inside + nextSize > maxCells) {
+                break;
+            }
+            if (result.length < resultSize + inside + nextSize) {
+                result = Arrays.copyOf(result, Math.max(result.length * 2, resultSize + inside + nextSize));
+            }
+            for (int i = 0; i < inside; i++) {
+                result[resultSize++] = pack(next[next.length - 1 - i], childBits);
+            }
+            long[] swap = partial;
+            partial = next;
+            next = swap;
+            partialSize = nextSize;
+            bits = childBits;
+        }
+        if (result.length < resultSize + partialSize) {
+            result = Arrays.copyOf(result, resultSize + partialSize);
+        }
+        for (int i = 0; i < partialSize; i++) {
+            result[resultSize++] = pack(partial[i], bits);
+        }
+        result = Arrays.copyOf(result, resultSize);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * 单元边界，同{@link #bounds(long, double[])}
+     *
+     * @param hash 右对齐的二进制位
+     * @param bits 位数
+     */
+    private static void cellBounds(long hash, int bits, double[] out) {
+        int latBits = bits >> 1;
+        int lonBits = bits - latBits;
+        double latSize = 180.0 / (1L << latBits);
+        double lonSize = 360.0 / (1L << lonBits);
+        out[0] = -90 + latIndex(hash, bits) * latSize;
+        out[1] = -180 + lonIndex(hash, bits) * lonSize;
+        out[2] = out[0] + latSize;
+        out[3] = out[1] + lonSize;
+    }
+
+    private static void checkLatLon(double lat, double lon) {
+        if (!(lat >= -90 && lat <= 90)) {
+            throw new IllegalArgumentException("纬度必须在-90到90之间: " + lat);
+        }
+        if (!(lon >= -180 && lon <= 180)) {
+            throw new IllegalArgumentException("经度必须在-180到180之间: " + lon);
+        }
+    }
+
+    /**
+     * 被覆盖的区域
+     */
+    private interface Region {
+        //单元与区域不相交
+        int DISJOINT = 0;
+        //单元与区域相交
+        int PARTIAL = 1;
+        //单元完全在区域内
+        int INSIDE = 2;
+
+        /**
+         * 单元与区域的关系；不确定时应返回PARTIAL，以保证覆盖完整
+         *
+         * @param bounds {最小纬度, 最小经度, 最大纬度, 最大经度}
+         * @return
+         */
+        int relate(double[] bounds);
+    }
+
+    /**
+     * 圆形区域，按球面距离判断
+     */
+    private static final class CircleRegion implements Region {
+        private final double lat;
+        private final double lon;
+        private final double sinLat;
+        private final double cosLat;
+        //半径对应的 sin²(角距离/2)
+        private final double haversine;
+
+        CircleRegion(double lat, double lon, double radius) {
+            this.lat = rad(lat);
+            this.lon = lon;
+            this.sinLat = Math.sin(this.lat);
+            this.cosLat = Math.cos(this.lat);
+            double angle = Math.min(radius / EARTH_RADIUS, Math.PI);
+            double h = Math.sin(angle / 2);
+            this.haversine = h * h;
+        }
+
+        @Override
+        public int relate(double[] bounds) {
+            //到单元的最近点：经度取最近的经线（圆心经度在单元内时为0），
+            //纬度取该经线上离圆心最近的点（极值点或两端之一）
+            double west = lonDiff(bounds[1]);
+            double east = lonDiff(bounds[3]);
+            boolean within = bounds[1] <= lon && lon <= bounds[3];
+            double dLon = within ? 0 : rad(Math.min(Math.abs(west), Math.abs(east)));
+            double minLat = rad(bounds[0]);
+            double maxLat = rad(bounds[2]);
+            double nearest = Math.atan2(sinLat, cosLat * Math.cos(dLon));
+            nearest = Math.max(minLat, Math.min(maxLat, nearest));
+            double distance = Math.min(haversine(nearest, dLon), Math.min(haversine(minLat, dLon), haversine(maxLat, dLon)));
+            if (distance > haversine) {
+                return DISJOINT;
+            }
+            //经度差都不超过90度时，单元内离圆心最远的点是某个顶点
+            if (Math.abs(west) > 90 || Math.abs(east) > 90) {
+                return PARTIAL;
+            }
+            double w = rad(west);
+            double e = rad(east);
+            if (haversine(minLat, w) <= haversine && haversine(minLat, e) <= haversine
+                    && haversine(maxLat, w) <= haversine && haversine(maxLat, e) <= haversine) {
+                return INSIDE;
+            }
+            return PARTIAL;
+        }
+
+        /**
+         * 经度差，取值-180到180
+         */
+        private double lonDiff(double other) {
+            double diff = other - lon;
+            if (diff > 180) {
+                diff -= 360;
+            } else if (diff < -180) {
+                diff += 360;
+            }
+            return diff;
+        }
+
+        /**
+         * 圆心到(纬度, 经度差)的 sin²(角距离/2)
+         */
+        private double haversine(double otherLat, double dLon) {
+            double a = Math.sin((otherLat - lat) / 2);
+            double b = Math.sin(dLon / 2);
+            return a * a + cosLat * Math.cos(otherLat) * b * b;
+        }
+    }
+
+    /**
+     * 经纬度矩形区域，最小经度大于最大经度时跨越180度经线
+     */
+    private static final class BoxRegion implements Region {
+        private final double minLat;
+        private final double minLon;
+        private final double maxLat;
+        private final double maxLon;
+        private final boolean wrap;
+
+        BoxRegion(double minLat, double minLon, double maxLat, double maxLon) {
+            this.minLat = minLat;
+            this.minLon = minLon;
+            this.maxLat = maxLat;
+            this.maxLon = maxLon;
+            this.wrap = minLon > maxLon;
+        }
+
+        @Override
+        public int relate(double[] bounds) {
+            if (bounds[2] < minLat || bounds[0] > maxLat) {
+                return DISJOINT;
+            }
+            boolean intersects;
+            boolean inside;
+            if (wrap) {
+                //单元经度范围不跨越180度经线，只可能完全落在东西两段之一
+                intersects = bounds[3] >= minLon || bounds[1] <= maxLon;
+                inside = bounds[1] >= minLon || bounds[3] <= maxLon;
+            } else {
+                intersects = bounds[3] >= minLon && bounds[1] <= maxLon;
+                inside = bounds[1] >= minLon && bounds[3] <= maxLon;
+            }
+            if (!intersects) {
+                return DISJOINT;
+            }
+            return inside && bounds[0] >= minLat && bounds[2] <= maxLat ? INSIDE : PARTIAL;
         }
-        base = base + BASE32.toCharArray()[(NEIGHBORS.get(dir + ":" + type).indexOf(lastChr))];
-        return base;
     }
 
     //=======================================根据经纬度计算亮点距离===============
@@ -234,16 +1156,91 @@ public class GeohashUtil {
      * @param lat1 第一点的纬度
      * @param lon2 第二点的经度
      * @param lat2 第二点的纬度
-     * @return 返回的距离，单位m
+     * @return 返回的距离，单位m，保留4位小数
      */
     public static double GetDistance(double lon1, double lat1, double lon2, double lat2) {
+        return Math.round(distance(lat1, lon1, lat2, lon2) * 10000) / 10000.0;
+    }
+
+    /**
+     * 两点之间的球面距离(haversine公式)，不做舍入
+     *
+     * @param lat1 第一点的纬度
+     * @param lon1 第一点的经度
+     * @param lat2 第二点的纬度
+     * @param lon2 第二点的经度
+     * @return 距离，单位m
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
         double radLat1 = rad(lat1);
         double radLat2 = rad(lat2);
-        double a = radLat1 - radLat2;
-        double b = rad(lon1) - rad(lon2);
-        double s = 2 * Math.asin(Math.sqrt(Math.pow(Math.sin(a / 2), 2) + Math.cos(radLat1) * Math.cos(radLat2) * Math.pow(Math.sin(b / 2), 2)));
-        s = s * EARTH_RADIUS;
-        s = Math.round(s * 10000) / 10000;
-        return s;
+        double a = Math.sin((radLat1 - radLat2) / 2);
+        double b = Math.sin(rad(lon1 - lon2) / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a * a + Math.cos(radLat1) * Math.cos(radLat2) * b * b));
+    }
+
+    /**
+     * 批量计算同一原点到多个点的球面距离，结果与{@link #distance(double, double, double, double)}一致
+     * 原点的弧度和余弦只计算一次
+     *
+     * @param lat  原点纬度
+     * @param lon  原点经度
+     * @param lats 各点纬度
+     * @param lons 各点经度
+     * @param out  距离(单位m)，out[i]对应第i个点，长度不小于lats.length
+     */
+    public static void distances(double lat, double lon, double[] lats, double[] lons, double[] out) {
+        distances(lat, lon, lats, lons, 0, lats.length, out);
+    }
+
+    /**
+     * 批量计算同一原点到lats/lons中[offset, offset + length)各点的球面距离
+     *
+     * @param lat    原点纬度
+     * @param lon    原点经度
+     * @param lats   各点纬度
+     * @param lons   各点经度
+     * @param offset 起始位置
+     * @param length 点数
+     * @param out    距离(单位m)，out[i]对应第offset + i个点，长度不小于length
+     */
+    public static void distances(double lat, double lon, double[] lats, double[] lons, int offset, int length, double[] out) {
+        double radLat = rad(lat);
+        double cosLat = Math.cos(radLat);
+        for (int i = 0; i < length; i++) {
+            double radLat2 = rad(lats[offset + i]);
+            double a = Math.sin((radLat - radLat2) / 2);
+            double b = Math.sin(rad(lon - lons[offset + i]) / 2);
+            out[i] = 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a * a + cosLat * Math.cos(radLat2) * b * b));
+        }
+    }
+
+    /**
+     * 批量计算距离的等距圆柱投影近似：把经度差按原点纬度的余弦缩放后按平面勾股定理计算，每个点不调用三角函数
+     * 只适用于短距离：纬度不超过70度、距离不超过10公里时，与{@link #distance(double, double, double, double)}的相对误差小于0.1%；
+     * 误差随距离和纬度增大，跨越南北极时不可用
+     *
+     * @param lat    原点纬度
+     * @param lon    原点经度
+     * @param lats   各点纬度
+     * @param lons   各点经度
+     * @param offset 起始位置
+     * @param length 点数
+     * @param out    近似距离(单位m)，out[i]对应第offset + i个点，长度不小于length
+     */
+    public static void approximateDistances(double lat, double lon, double[] lats, double[] lons, int offset, int length, double[] out) {
+        double scale = Math.cos(rad(lat));
+        for (int i = 0; i < length; i++) {
+            double dLat = lats[offset + i] - lat;
+            double dLon = lons[offset + i] - lon;
+            //经度差取-180到180度，跨越180度经线时走短的一侧
+            if (dLon > 180) {
+                dLon -= 360;
+            } else if (dLon < -180) {
+                dLon += 360;
+            }
+            double x = dLon * scale;
+            out[i] = rad(Math.sqrt(x * x + dLat * dLat)) * EARTH_RADIUS;
+        }
     }
 }
@@ -0,0 +1,231 @@
+package com.newbieandy.commons;
+
+/**
+ * @Description: {@link HttpClientUtil}共享连接池的配置（不可变），同步与异步请求各有一个连接池，使用相同的上限
+ * <pre>
+ * HttpClientUtil.configure(HttpClientConfig.builder().maxTotal(500).maxPerRoute(50).build());
+ * </pre>
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public final class HttpClientConfig {
+
+    /**
+     * 默认配置：总连接数200，每个路由（目标主机）20，连接/读取超时5秒/30秒，
+     * 无Keep-Alive响应头时连接保持30秒，空闲60秒的连接每5秒清理一次，异步请求的I/O线程数等于CPU核数
+     */
+    public static final HttpClientConfig DEFAULT = builder().build();
+
+    //连接池总连接数上限
+    private final int maxTotal;
+    //每个路由（目标主机）的连接数上限
+    private final int maxPerRoute;
+    //建立连接超时(毫秒)
+    private final int connectTimeout;
+    //读取数据超时(毫秒)
+    private final int socketTimeout;
+    //从连接池获取连接的超时(毫秒)
+    private final int connectionRequestTimeout;
+    //服务端未通过Keep-Alive响应头指定时，连接保持的时间(毫秒)
+    private final long keepAliveMillis;
+    //空闲超过此时间的连接被关闭(毫秒)
+    private final long idleTimeoutMillis;
+    //清理过期与空闲连接的周期(毫秒)
+    private final long evictIntervalMillis;
+    //异步请求的I/O线程数
+    private final int ioThreads;
+
+    private HttpClientConfig(Builder builder) {
+        this.maxTotal = builder.maxTotal;
+        this.maxPerRoute = builder.maxPerRoute;
+        this.connectTimeout = builder.connectTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.connectionRequestTimeout = builder.connectionRequestTimeout;
+        this.keepAliveMillis = builder.keepAliveMillis;
+        this.idleTimeoutMillis = builder.idleTimeoutMillis;
+        this.evictIntervalMillis = builder.evictIntervalMillis;
+        this.ioThreads = builder.ioThreads;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 以当前配置为基础创建构建器
+     *
+     * @return
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .maxTotal(maxTotal)
+                .maxPerRoute(maxPerRoute)
+                .connectTimeout(connectTimeout)
+                .socketTimeout(socketTimeout)
+                .connectionRequestTimeout(connectionRequestTimeout)
+                .keepAliveMillis(keepAliveMillis)
+                .idleTimeoutMillis(idleTimeoutMillis)
+                .evictIntervalMillis(evictIntervalMillis)
+                .ioThreads(ioThreads);
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public long getEvictIntervalMillis() {
+        return evictIntervalMillis;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientConfig{" +
+                "maxTotal=" + maxTotal +
+                ", maxPerRoute=" + maxPerRoute +
+                ", connectTimeout=" + connectTimeout +
+                ", socketTimeout=" + socketTimeout +
+                ", connectionRequestTimeout=" + connectionRequestTimeout +
+                ", keepAliveMillis=" + keepAliveMillis +
+                ", idleTimeoutMillis=" + idleTimeoutMillis +
+                ", evictIntervalMillis=" + evictIntervalMillis +
+                ", ioThreads=" + ioThreads +
+                '}';
+    }
+
+    /**
+     * 连接池配置构建器
+     */
+    public static final class Builder {
+        private int maxTotal = 200;
+        private int maxPerRoute = 20;
+        private int connectTimeout = 5000;
+        private int socketTimeout = 30000;
+        private int connectionRequestTimeout = 5000;
+        private long keepAliveMillis = 30000;
+        private long idleTimeoutMillis = 60000;
+        private long evictIntervalMillis = 5000;
+        private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+        private Builder() {
+        }
+
+        /**
+         * 连接池总连接数上限
+         */
+        public Builder maxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+            return this;
+        }
+
+        /**
+         * 每个路由（目标主机）的连接数上限
+         */
+        public Builder maxPerRoute(int maxPerRoute) {
+            this.maxPerRoute = maxPerRoute;
+            return this;
+        }
+
+        /**
+         * 建立连接超时(毫秒)，0表示不超时
+         */
+        public Builder connectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * 读取数据超时(毫秒)，0表示不超时
+         */
+        public Builder socketTimeout(int socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        /**
+         * 从连接池获取连接的超时(毫秒)，0表示不超时
+         */
+        public Builder connectionRequestTimeout(int connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+            return this;
+        }
+
+        /**
+         * 服务端未通过Keep-Alive响应头指定时，连接保持的时间(毫秒)
+         */
+        public Builder keepAliveMillis(long keepAliveMillis) {
+            this.keepAliveMillis = keepAliveMillis;
+            return this;
+        }
+
+        /**
+         * 空闲超过此时间的连接被关闭(毫秒)
+         */
+        public Builder idleTimeoutMillis(long idleTimeoutMillis) {
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * 清理过期与空闲连接的周期(毫秒)
+         */
+        public Builder evictIntervalMillis(long evictIntervalMillis) {
+            this.evictIntervalMillis = evictIntervalMillis;
+            return this;
+        }
+
+        /**
+         * 异步请求的I/O线程数，默认为CPU核数；少量线程即可同时处理大量请求
+         */
+        public Builder ioThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        public HttpClientConfig build() {
+            if (maxTotal < 1 || maxPerRoute < 1 || maxPerRoute > maxTotal) {
+                throw new IllegalArgumentException(String.format(
+                        "连接数上限必须满足 1 <= maxPerRoute <= maxTotal: %d, %d", maxPerRoute, maxTotal));
+            }
+            if (connectTimeout < 0 || socketTimeout < 0 || connectionRequestTimeout < 0) {
+                throw new IllegalArgumentException(String.format("超时时间不能小于0: %d, %d, %d",
+                        connectTimeout, socketTimeout, connectionRequestTimeout));
+            }
+            if (keepAliveMillis < 1 || idleTimeoutMillis < 1 || evictIntervalMillis < 1) {
+                throw new IllegalArgumentException(String.format("连接保持、空闲与清理时间必须大于0: %d, %d, %d",
+                        keepAliveMillis, idleTimeoutMillis, evictIntervalMillis));
+            }
+            if (ioThreads < 1) {
+                throw new IllegalArgumentException(String.format("I/O线程数不能小于1: %d", ioThreads));
+            }
+            return new HttpClientConfig(this);
+        }
+    }
+}
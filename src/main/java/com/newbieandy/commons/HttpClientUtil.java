@@ -1,7 +1,11 @@
 package com.newbieandy.commons;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.config.RequestConfig;
@@ -9,22 +13,152 @@ import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.NHttpConnection;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestExecutor;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
 import org.apache.http.util.EntityUtils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 /**
+ * 所有方法共用一个长期存活的HttpClient，底层为{@link PoolingHttpClientConnectionManager}连接池，
+ * 连接在请求之间复用；连接池参数见{@link HttpClientConfig}，可通过{@link #configure(HttpClientConfig)}修改
+ * getAsync/postAsync为非阻塞版本，首次调用时创建基于NIO的异步HttpClient，少量I/O线程即可同时处理大量请求，
+ * 每个目标主机的并发连接数受{@link HttpClientConfig#getMaxPerRoute()}限制，超出的请求排队等待连接
+ * getStream/postStream把响应体以流的形式交给{@link StreamHandler}，配合{@link #chunks(int, ChunkConsumer)}、
+ * {@link #lines(String, LineHandler)}可以按块或按行处理大响应体而不把它整个读入内存
+ * getAll/executeAll批量执行请求，限制总并发数与每个主机的并发数，结果按完成顺序返回
  * Created by machao on 2016/6/21.
  */
 public class HttpClientUtil {
 
+    /**
+     * 不限制响应体大小
+     */
+    public static final long UNLIMITED = -1;
+
+    //下载未完成时的临时文件后缀
+    private static final String PART_SUFFIX = ".part";
+    //下载时每次transferFrom的最大字节数
+    private static final long TRANSFER_SIZE = 1 << 20;
+
+    //共享连接池，首次使用时按默认配置创建
+    private static volatile Pool pool;
+
+    /**
+     * 按新配置重建共享连接池，旧连接池随即关闭，此时尚未完成的请求可能失败
+     *
+     * @param config 连接池配置
+     */
+    public static void configure(HttpClientConfig config) {
+        if (null == config) {
+            throw new IllegalArgumentException("连接池配置不能为空!");
+        }
+        Pool old;
+        synchronized (HttpClientUtil.class) {
+            old = pool;
+            pool = new Pool(config);
+        }
+        if (null != old) {
+            old.close();
+        }
+    }
+
+    /**
+     * 关闭共享连接池，之后的请求会按默认配置重新创建
+     */
+    public static void shutdown() {
+        Pool old;
+        synchronized (HttpClientUtil.class) {
+            old = pool;
+            pool = null;
+        }
+        if (null != old) {
+            old.close();
+        }
+    }
+
+    /**
+     * 共享的HttpClient，用于本类未覆盖的请求方式；不要关闭它
+     *
+     * @return
+     */
+    public static CloseableHttpClient getHttpClient() {
+        return pool().client;
+    }
+
+    private static Pool pool() {
+        Pool current = pool;
+        if (null == current) {
+            synchronized (HttpClientUtil.class) {
+                current = pool;
+                if (null == current) {
+                    current = new Pool(HttpClientConfig.DEFAULT);
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
     /**
      * 模拟post请求
      *
@@ -97,40 +231,19 @@ public class HttpClientUtil {
      * @return
      */
     private static String exeProxyPost(String url, Map<String, String> params, Map<String, String> heads, String proxyIp, Integer proxyPost) {
-        //获取httpClient实例
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        //创建HttpPost
-        HttpPost httpPost = new HttpPost(url);
-        //设置代理
-        if (null != proxyPost && null != proxyIp) {
-            HttpHost proxy = new HttpHost(proxyIp, proxyPost, "http");
-            RequestConfig config = RequestConfig.custom().setProxy(proxy).build();
-            httpPost.setConfig(config);
-        }
-
-        //设置参数
-        List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>();
-        if (null != params && !params.isEmpty()) {
-            for (Map.Entry<String, String> entry : params.entrySet()) {
-                BasicNameValuePair basicNameValuePair = new BasicNameValuePair(entry.getKey(), entry.getValue());
-                nameValuePairs.add(basicNameValuePair);
-            }
-        }
-        //设置请求头
-        if (null != heads && !heads.isEmpty()) {
-            for (Map.Entry<String, String> entry : heads.entrySet()) {
-                httpPost.setHeader(new BasicHeader(entry.getKey(), entry.getValue()));
-            }
-        }
-
-        UrlEncodedFormEntity formEntity;
+        //获取共享的httpClient实例
+        Pool pool = pool();
+        CloseableHttpClient httpClient = pool.client;
         try {
-            //创建表单参数实体
-            formEntity = new UrlEncodedFormEntity(nameValuePairs, "UTF-8");
-            //设置参数
-            httpPost.setEntity(formEntity);
+            //创建HttpPost
+            HttpPost httpPost = createPost(url, params, heads);
+            //设置代理，其余参数沿用连接池的默认配置
+            if (null != proxyPost && null != proxyIp) {
+                HttpHost proxy = new HttpHost(proxyIp, proxyPost, "http");
+                RequestConfig config = RequestConfig.copy(pool.requestConfig).setProxy(proxy).build();
+                httpPost.setConfig(config);
+            }
             //发送请求
-            System.out.println("POST请求:url->" + url + "开始...");
             CloseableHttpResponse httpResponse = httpClient.execute(httpPost);
             //获取响应实体
             try {
@@ -145,17 +258,48 @@ public class HttpClientUtil {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            //释放连接
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
         return null;
     }
 
+    /**
+     * 创建表单提交的HttpPost
+     *
+     * @param url    请求URL
+     * @param params 请求参数
+     * @param heads  请求头
+     * @return
+     */
+    private static HttpPost createPost(String url, Map<String, String> params, Map<String, String> heads) throws UnsupportedEncodingException {
+        HttpPost httpPost = new HttpPost(url);
+        //设置参数
+        List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>();
+        if (null != params && !params.isEmpty()) {
+            for (Map.Entry<String, String> entry : params.entrySet()) {
+                BasicNameValuePair basicNameValuePair = new BasicNameValuePair(entry.getKey(), entry.getValue());
+                nameValuePairs.add(basicNameValuePair);
+            }
+        }
+        setHeads(httpPost, heads);
+        //创建表单参数实体
+        httpPost.setEntity(new UrlEncodedFormEntity(nameValuePairs, "UTF-8"));
+        return httpPost;
+    }
+
+    /**
+     * 设置请求头
+     *
+     * @param request
+     * @param heads
+     */
+    private static void setHeads(HttpUriRequest request, Map<String, String> heads) {
+        if (null != heads && !heads.isEmpty()) {
+            for (Map.Entry<String, String> entry : heads.entrySet()) {
+                request.setHeader(new BasicHeader(entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
 
     /**
      * 模拟GET请求
@@ -187,6 +331,17 @@ public class HttpClientUtil {
      * @return
      */
     public static String get(String url, Map<String, String> params, Map<String, String> heads) {
+        return exeGet(appendParams(url, params), heads);
+    }
+
+    /**
+     * 把参数拼接到url后面
+     *
+     * @param url
+     * @param params
+     * @return
+     */
+    private static String appendParams(String url, Map<String, String> params) {
         if (null != params && !params.isEmpty()) {
             StringBuilder sb = new StringBuilder(url).append("?");
             for (Map.Entry<String, String> entry : params.entrySet()) {
@@ -195,7 +350,7 @@ public class HttpClientUtil {
             url = sb.toString();
             url = url.substring(0, url.length() - 1);
         }
-        return exeGet(url, heads);
+        return url;
     }
 
     /**
@@ -205,17 +360,12 @@ public class HttpClientUtil {
      * @return
      */
     private static String exeGet(String url, Map<String, String> heads) {
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        CloseableHttpClient httpClient = pool().client;
         try {
             //创建httpGet
             HttpGet httpGet = new HttpGet(url);
-
             //设置请求头
-            if (null != heads && !heads.isEmpty()) {
-                for (Map.Entry<String, String> entry : heads.entrySet()) {
-                    httpGet.setHeader(new BasicHeader(entry.getKey(), entry.getValue()));
-                }
-            }
+            setHeads(httpGet, heads);
             CloseableHttpResponse httpResponse = httpClient.execute(httpGet);
             //获取相应实体
             try {
@@ -225,15 +375,293 @@ public class HttpClientUtil {
             }
         } catch (IOException e) {
             e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 异步GET请求
+     *
+     * @param url
+     * @return
+     * @see #getAsync(String, Map, Map)
+     */
+    public static CompletableFuture<String> getAsync(String url) {
+        return getAsync(url, null, null);
+    }
+
+    /**
+     * 异步GET请求，不占用调用线程；响应体按GBK解码，与{@link #get(String, Map, Map)}一致
+     * 请求失败或连接池已关闭时返回的CompletableFuture以异常结束，取消它会中止请求并关闭所用的连接
+     * 回调在I/O线程中执行，不要在非Async的后续阶段中做阻塞操作
+     *
+     * @param url    请求url
+     * @param params 请求参数
+     * @param heads  请求头
+     * @return
+     */
+    public static CompletableFuture<String> getAsync(String url, Map<String, String> params, Map<String, String> heads) {
+        HttpGet httpGet = new HttpGet(appendParams(url, params));
+        setHeads(httpGet, heads);
+        return execute(httpGet, "GBK");
+    }
+
+    /**
+     * 异步POST请求
+     *
+     * @param url    请求路径
+     * @param params 请求参数
+     * @return
+     * @see #postAsync(String, Map, Map)
+     */
+    public static CompletableFuture<String> postAsync(String url, Map<String, String> params) {
+        return postAsync(url, params, null);
+    }
+
+    /**
+     * 异步POST请求，不占用调用线程；响应体按UTF-8解码，与{@link #post(String, Map, Map)}一致
+     * 请求失败或连接池已关闭时返回的CompletableFuture以异常结束，取消它会中止请求并关闭所用的连接
+     * 回调在I/O线程中执行，不要在非Async的后续阶段中做阻塞操作
+     *
+     * @param url    请求路径
+     * @param params 请求参数
+     * @param heads  请求头
+     * @return
+     */
+    public static CompletableFuture<String> postAsync(String url, Map<String, String> params, Map<String, String> heads) {
+        try {
+            return execute(createPost(url, params, heads), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            CompletableFuture<String> result = new CompletableFuture<String>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
+    /**
+     * 通过异步HttpClient执行请求
+     *
+     * @param request
+     * @param charset 响应体编码
+     * @return
+     */
+    private static CompletableFuture<String> execute(HttpUriRequest request, final String charset) {
+        final CompletableFuture<String> result = new CompletableFuture<String>();
+        final Exchange exchange = new Exchange(request);
+        result.whenComplete(new BiConsumer<String, Throwable>() {
+            @Override
+            public void accept(String body, Throwable throwable) {
+                if (result.isCancelled()) {
+                    exchange.abort();
+                }
+            }
+        });
+        try {
+            exchange.start(pool().asyncClient(), new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    HttpEntity entity = response.getEntity();
+                    try {
+                        //异步客户端已把响应体读入内存，这里只做解码
+                        result.complete(null == entity ? null : EntityUtils.toString(entity, charset));
+                    } catch (IOException | RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    result.completeExceptionally(ex);
+                }
+
+                @Override
+                public void cancelled() {
+                    result.cancel(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            //连接池已被shutdown()关闭
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * 流式GET请求，响应体以流的形式交给handler，不在内存中缓存
+     *
+     * @param url         请求url
+     * @param params      请求参数
+     * @param heads       请求头
+     * @param maxBodySize 响应体大小上限(字节)，超过时抛出IOException；{@link #UNLIMITED}表示不限制
+     * @param handler     处理响应体
+     * @return handler的返回值
+     * @throws IOException 请求失败、响应体超过上限或handler抛出
+     */
+    public static <T> T getStream(String url, Map<String, String> params, Map<String, String> heads,
+                                  long maxBodySize, StreamHandler<T> handler) throws IOException {
+        HttpGet httpGet = new HttpGet(appendParams(url, params));
+        setHeads(httpGet, heads);
+        return execute(httpGet, maxBodySize, handler);
+    }
+
+    /**
+     * 流式POST请求，响应体以流的形式交给handler，不在内存中缓存
+     *
+     * @param url         请求路径
+     * @param params      请求参数
+     * @param heads       请求头
+     * @param maxBodySize 响应体大小上限(字节)，超过时抛出IOException；{@link #UNLIMITED}表示不限制
+     * @param handler     处理响应体
+     * @return handler的返回值
+     * @throws IOException 请求失败、响应体超过上限或handler抛出
+     */
+    public static <T> T postStream(String url, Map<String, String> params, Map<String, String> heads,
+                                   long maxBodySize, StreamHandler<T> handler) throws IOException {
+        return execute(createPost(url, params, heads), maxBodySize, handler);
+    }
+
+    /**
+     * 通过共享HttpClient执行请求，响应体以流的形式交给handler
+     * handler返回后响应随即关闭；未读完的响应体不再读取，对应的连接直接关闭而不放回连接池
+     *
+     * @param request     请求
+     * @param maxBodySize 响应体大小上限(字节)，超过时抛出IOException；{@link #UNLIMITED}表示不限制
+     * @param handler     处理响应体，无响应体时得到空流
+     * @return handler的返回值
+     * @throws IOException 请求失败、响应体超过上限或handler抛出
+     */
+    public static <T> T execute(HttpUriRequest request, long maxBodySize, StreamHandler<T> handler) throws IOException {
+        if (null == handler) {
+            throw new IllegalArgumentException("handler不能为空!");
+        }
+        if (maxBodySize < 0 && maxBodySize != UNLIMITED) {
+            throw new IllegalArgumentException("响应体大小上限不能小于0: " + maxBodySize);
+        }
+        CloseableHttpResponse httpResponse = pool().client.execute(request);
+        try {
+            HttpEntity entity = httpResponse.getEntity();
+            InputStream input = null == entity ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+            if (maxBodySize != UNLIMITED) {
+                //声明的长度已超过上限时不再读取
+                if (null != entity && entity.getContentLength() > maxBodySize) {
+                    throw new IOException(String.format("响应体超过上限%d字节: %d", maxBodySize, entity.getContentLength()));
+                }
+                input = new BoundedInputStream(input, maxBodySize);
+            }
+            return handler.handle(input);
         } finally {
-            //关闭连接
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            httpResponse.close();
+        }
+    }
+
+    /**
+     * 把响应体按块交给consumer的handler，内存占用只有一个块
+     *
+     * @param chunkSize 块大小(字节)
+     * @param consumer  接收每一块
+     * @return 返回响应体总字节数的handler
+     */
+    public static StreamHandler<Long> chunks(final int chunkSize, final ChunkConsumer consumer) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("块大小不能小于1: " + chunkSize);
+        }
+        if (null == consumer) {
+            throw new IllegalArgumentException("consumer不能为空!");
+        }
+        return new StreamHandler<Long>() {
+            @Override
+            public Long handle(InputStream input) throws IOException {
+                ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+                long total = 0;
+                int len;
+                while ((len = input.read(buffer.array(), 0, chunkSize)) != -1) {
+                    if (len == 0) {
+                        continue;
+                    }
+                    buffer.position(0).limit(len);
+                    consumer.accept(buffer);
+                    total += len;
+                }
+                return total;
             }
+        };
+    }
+
+    /**
+     * 把响应体按行交给handler的handler，行不含换行符，内存占用只有当前行
+     *
+     * @param charset 响应体编码
+     * @param handler 遍历行
+     * @return
+     */
+    public static <T> StreamHandler<T> lines(final String charset, final LineHandler<T> handler) {
+        if (null == charset || null == handler) {
+            throw new IllegalArgumentException("charset和handler不能为空!");
         }
-        return null;
+        return new StreamHandler<T>() {
+            @Override
+            public T handle(InputStream input) throws IOException {
+                LineIterator lines = new LineIterator(new BufferedReader(new InputStreamReader(input, charset)));
+                try {
+                    return handler.handle(lines);
+                } catch (UncheckedIOException e) {
+                    //读取行时的异常
+                    throw e.getCause();
+                }
+            }
+        };
+    }
+
+    /**
+     * 批量GET请求
+     *
+     * @param urls           请求url
+     * @param maxConcurrency 同时执行的请求数上限
+     * @param maxPerHost     同一主机同时执行的请求数上限
+     * @param timeoutMillis  单个请求从开始执行到完成的超时(毫秒)
+     * @return 按完成顺序返回结果
+     * @see #executeAll(Collection, int, int, long)
+     */
+    public static Iterator<FetchResult> getAll(Collection<String> urls, int maxConcurrency, int maxPerHost, long timeoutMillis) {
+        if (null == urls) {
+            throw new IllegalArgumentException("urls不能为空!");
+        }
+        List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>(urls.size());
+        for (String url : urls) {
+            requests.add(new HttpGet(url));
+        }
+        return executeAll(requests, maxConcurrency, maxPerHost, timeoutMillis);
+    }
+
+    /**
+     * 批量执行请求：通过异步HttpClient同时执行，总数不超过maxConcurrency，同一主机不超过maxPerHost，
+     * 其余请求排队，各主机轮流出队
+     * maxConcurrency、maxPerHost分别不超过连接池的{@link HttpClientConfig#getMaxTotal()}、{@link HttpClientConfig#getMaxPerRoute()}，
+     * 超过时按连接池上限执行，使开始执行的请求都能立即得到连接，超时时间不会消耗在等待连接上
+     * 返回的迭代器按完成顺序返回每个请求的结果，next()阻塞到下一个结果可用，共返回requests.size()个；
+     * 单个请求失败或超时只体现在它自己的结果中，不影响其余请求
+     * 响应体在内存中读完后按响应头中的编码解码，未指定时为UTF-8
+     *
+     * @param requests       请求，URL必须是绝对地址
+     * @param maxConcurrency 同时执行的请求数上限
+     * @param maxPerHost     同一主机同时执行的请求数上限
+     * @param timeoutMillis  单个请求从开始执行到完成的超时(毫秒)，排队时间不计入
+     * @return 按完成顺序返回结果，只能由一个线程遍历
+     */
+    public static Iterator<FetchResult> executeAll(Collection<? extends HttpUriRequest> requests,
+                                                   int maxConcurrency, int maxPerHost, long timeoutMillis) {
+        if (null == requests) {
+            throw new IllegalArgumentException("requests不能为空!");
+        }
+        if (maxConcurrency < 1 || maxPerHost < 1) {
+            throw new IllegalArgumentException(String.format("并发数不能小于1: %d, %d", maxConcurrency, maxPerHost));
+        }
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("超时时间必须大于0: " + timeoutMillis);
+        }
+        Batch batch = new Batch(pool(), requests, maxConcurrency, maxPerHost, timeoutMillis);
+        batch.dispatch();
+        return batch;
     }
 
     /**
@@ -242,41 +670,142 @@ public class HttpClientUtil {
      * @param url
      * @param dirBasePath
      * @param fileName
+     * @see #download(String, File)
      */
     public static void downLoadImg(String url, String dirBasePath, String fileName) {
-        CloseableHttpClient httpClient = HttpClients.createDefault();
         try {
-            //创建httpGet
-            HttpGet httpGet = new HttpGet(url);
+            download(url, new File(dirBasePath, fileName));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-            CloseableHttpResponse httpResponse = httpClient.execute(httpGet);
-            //获取相应实体
-            try {
-                HttpEntity entity = httpResponse.getEntity();
-                if (entity != null) {
-                    InputStream input = entity.getContent();
-                    //文件名
-                    fileName = dirBasePath + "\\" + fileName;
-                    OutputStream output = new FileOutputStream(fileName);
-                    byte[] buffer = new byte[1024];
-                    int len = -1;
-                    while ((len = input.read(buffer)) != -1) {
-                        output.write(buffer, 0, len);
+    /**
+     * 下载文件：响应体经FileChannel.transferFrom写入同目录下的临时文件target.part，完成后原子地重命名为target，
+     * 因此target要么不存在（或保持旧内容），要么是完整的文件
+     * 上次下载中断留下的临时文件会通过Range请求从断点续传；服务端不支持Range时从头下载
+     *
+     * @param url    文件地址
+     * @param target 保存位置，所在目录不存在时自动创建
+     * @return 文件大小(字节)
+     * @throws IOException 请求失败、响应状态不是200/206或响应体不完整；已下载的部分保留在临时文件中供下次续传
+     */
+    public static long download(String url, File target) throws IOException {
+        if (null == url || null == target) {
+            throw new IllegalArgumentException("url和target不能为空!");
+        }
+        Path path = target.toPath().toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path part = path.resolveSibling(path.getFileName() + PART_SUFFIX);
+        long size = transfer(url, part, Files.exists(part) ? Files.size(part) : 0);
+        if (size < 0) {
+            //断点已超出文件大小（如服务端文件被替换），从头下载
+            size = transfer(url, part, 0);
+        }
+        try {
+            Files.move(part, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return size;
+    }
+
+    /**
+     * 批量下载，最多parallelism个文件同时下载，单个文件失败不影响其余文件
+     *
+     * @param downloads   文件地址 -> 保存位置
+     * @param parallelism 同时下载的文件数上限，同一主机的并发连接数另受{@link HttpClientConfig#getMaxPerRoute()}限制
+     * @return 下载失败的文件地址 -> 异常，全部成功时为空
+     * @throws InterruptedException 等待时被中断，尚未开始的下载被取消
+     */
+    public static Map<String, Exception> download(Map<String, File> downloads, int parallelism) throws InterruptedException {
+        if (null == downloads) {
+            throw new IllegalArgumentException("downloads不能为空!");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("并发数不能小于1: " + parallelism);
+        }
+        Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+        if (downloads.isEmpty()) {
+            return failures;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, downloads.size()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "httpclient-download");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            Map<String, Future<Long>> futures = new LinkedHashMap<String, Future<Long>>();
+            for (final Map.Entry<String, File> entry : downloads.entrySet()) {
+                futures.put(entry.getKey(), executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException {
+                        return download(entry.getKey(), entry.getValue());
                     }
-                    output.flush();
+                }));
+            }
+            for (Map.Entry<String, Future<Long>> entry : futures.entrySet()) {
+                try {
+                    entry.getValue().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failures.put(entry.getKey(), cause instanceof Exception ? (Exception) cause : e);
                 }
-            } finally {
-                httpResponse.close();
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         } finally {
-            //关闭连接
+            executor.shutdownNow();
+        }
+        return failures;
+    }
+
+    /**
+     * 从offset处开始把响应体写入临时文件
+     *
+     * @return 文件大小；offset超出服务端文件大小时返回-1
+     */
+    private static long transfer(String url, Path part, long offset) throws IOException {
+        HttpGet httpGet = new HttpGet(url);
+        if (offset > 0) {
+            httpGet.setHeader("Range", "bytes=" + offset + "-");
+        }
+        CloseableHttpResponse httpResponse = pool().client.execute(httpGet);
+        try {
+            int status = httpResponse.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && offset > 0) {
+                return -1;
+            }
+            if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new IOException(String.format("下载失败: %s -> %s", url, httpResponse.getStatusLine()));
+            }
+            //服务端忽略Range时返回完整内容
+            long position = status == HttpStatus.SC_PARTIAL_CONTENT ? offset : 0;
+            HttpEntity entity = httpResponse.getEntity();
+            FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
             try {
-                httpClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+                channel.truncate(position);
+                if (null != entity) {
+                    ReadableByteChannel source = Channels.newChannel(entity.getContent());
+                    long start = position;
+                    long count;
+                    while ((count = channel.transferFrom(source, position, TRANSFER_SIZE)) > 0) {
+                        position += count;
+                    }
+                    long expected = entity.getContentLength();
+                    if (expected >= 0 && position - start != expected) {
+                        throw new IOException(String.format("响应体不完整: %s, 已下载%d字节", url, position));
+                    }
+                }
+                //重命名前落盘，避免断电后得到不完整的文件
+                channel.force(false);
+            } finally {
+                channel.close();
             }
+            return position;
+        } finally {
+            httpResponse.close();
         }
     }
 
@@ -300,4 +829,708 @@ public class HttpClientUtil {
         }
         return null;
     }
+
+    /**
+     * 响应体处理
+     */
+    public interface StreamHandler<T> {
+
+        /**
+         * 处理响应体，返回后流即被关闭
+         *
+         * @param input 响应体
+         * @return
+         * @throws IOException
+         */
+        T handle(InputStream input) throws IOException;
+    }
+
+    /**
+     * 按块接收响应体
+     */
+    public interface ChunkConsumer {
+
+        /**
+         * 接收一块数据，chunk在各次调用之间复用，需要保留的数据应在返回前复制出来
+         *
+         * @param chunk 从position到limit为本块数据
+         * @throws IOException
+         */
+        void accept(ByteBuffer chunk) throws IOException;
+    }
+
+    /**
+     * 按行遍历响应体
+     */
+    public interface LineHandler<T> {
+
+        /**
+         * 遍历响应体的各行，读取失败时迭代器抛出{@link UncheckedIOException}，
+         * 由{@link #lines(String, LineHandler)}还原为IOException
+         *
+         * @param lines 只能遍历一次
+         * @return
+         * @throws IOException
+         */
+        T handle(Iterator<String> lines) throws IOException;
+    }
+
+    /**
+     * 批量请求中单个请求的结果
+     */
+    public static final class FetchResult {
+        private final HttpUriRequest request;
+        private final int status;
+        private final String body;
+        private final Exception exception;
+
+        private FetchResult(HttpUriRequest request, int status, String body, Exception exception) {
+            this.request = request;
+            this.status = status;
+            this.body = body;
+            this.exception = exception;
+        }
+
+        public HttpUriRequest getRequest() {
+            return request;
+        }
+
+        /**
+         * 响应状态码，请求失败时为-1
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * 响应体，请求失败或没有响应体时为null
+         */
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * 请求失败的原因，超时为{@link TimeoutException}，成功收到响应时为null
+         */
+        public Exception getException() {
+            return exception;
+        }
+
+        /**
+         * 收到2xx响应
+         */
+        public boolean isSuccess() {
+            return null == exception && status >= 200 && status < 300;
+        }
+
+        @Override
+        public String toString() {
+            return "FetchResult{" +
+                    "request=" + request.getRequestLine() +
+                    ", status=" + status +
+                    ", exception=" + exception +
+                    '}';
+        }
+    }
+
+    /**
+     * 一次批量请求：按主机排队，在并发数上限内分发，完成的结果放入队列
+     */
+    private static final class Batch implements Iterator<FetchResult> {
+        private final CloseableHttpAsyncClient client;
+        private final ScheduledThreadPoolExecutor scheduler;
+        private final int maxConcurrency;
+        private final int maxPerHost;
+        private final long timeoutMillis;
+        //有请求排队且未达到并发上限的主机，轮流出队
+        private final ArrayDeque<Host> ready = new ArrayDeque<Host>();
+        private final BlockingQueue<FetchResult> results = new LinkedBlockingQueue<FetchResult>();
+        //执行中的请求数
+        private int running;
+        //尚未通过next()返回的结果数
+        private int remaining;
+
+        Batch(Pool pool, Collection<? extends HttpUriRequest> requests, int maxConcurrency, int maxPerHost, long timeoutMillis) {
+            //不超过连接池上限，否则多出的请求在连接池中排队，超时在等待连接时就开始计算
+            this.maxConcurrency = Math.min(maxConcurrency, pool.config.getMaxTotal());
+            this.maxPerHost = Math.min(maxPerHost, pool.config.getMaxPerRoute());
+            this.timeoutMillis = timeoutMillis;
+            this.scheduler = pool.scheduler;
+            Map<HttpHost, Host> hosts = new HashMap<HttpHost, Host>();
+            for (HttpUriRequest request : requests) {
+                HttpHost target = null == request ? null : URIUtils.extractHost(request.getURI());
+                if (null == target) {
+                    throw new IllegalArgumentException("请求URL必须是绝对地址: " + request);
+                }
+                Host host = hosts.get(target);
+                if (null == host) {
+                    host = new Host();
+                    hosts.put(target, host);
+                    ready.add(host);
+                }
+                host.pending.add(request);
+            }
+            this.remaining = requests.size();
+            this.client = remaining == 0 ? null : pool.asyncClient();
+        }
+
+        /**
+         * 在并发上限内开始执行排队的请求
+         */
+        void dispatch() {
+            List<Call> calls = new ArrayList<Call>();
+            synchronized (this) {
+                while (running < maxConcurrency && !ready.isEmpty()) {
+                    Host host = ready.poll();
+                    calls.add(new Call(host, host.pending.poll()));
+                    host.running++;
+                    running++;
+                    if (!host.pending.isEmpty() && host.running < maxPerHost) {
+                        ready.add(host);
+                    }
+                }
+            }
+            //在锁外执行，回调可能在当前线程中直接发生
+            for (Call call : calls) {
+                call.start();
+            }
+        }
+
+        /**
+         * 请求完成，释放并发额度
+         */
+        void finish(Host host, FetchResult result) {
+            synchronized (this) {
+                running--;
+                //达到上限的主机此前不在ready中
+                if (host.running-- == maxPerHost && !host.pending.isEmpty()) {
+                    ready.add(host);
+                }
+            }
+            results.add(result);
+            dispatch();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public FetchResult next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                FetchResult result = results.take();
+                remaining--;
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待批量请求结果时被中断!", e);
+            }
+        }
+
+        /**
+         * 同一主机的请求队列
+         */
+        private final class Host {
+            private final ArrayDeque<HttpUriRequest> pending = new ArrayDeque<HttpUriRequest>();
+            private int running;
+        }
+
+        /**
+         * 执行中的单个请求，同时是它的回调与超时任务
+         */
+        private final class Call implements FutureCallback<HttpResponse>, Runnable {
+            private final Host host;
+            private final HttpUriRequest request;
+            private final Exchange exchange;
+            private ScheduledFuture<?> timeout;
+            private boolean done;
+            private boolean timedOut;
+
+            Call(Host host, HttpUriRequest request) {
+                this.host = host;
+                this.request = request;
+                this.exchange = new Exchange(request);
+            }
+
+            void start() {
+                try {
+                    exchange.start(client, this);
+                } catch (RuntimeException e) {
+                    failed(e);
+                    return;
+                }
+                RuntimeException rejected = null;
+                synchronized (this) {
+                    if (done) {
+                        return;
+                    }
+                    try {
+                        timeout = scheduler.schedule(this, timeoutMillis, TimeUnit.MILLISECONDS);
+                    } catch (RuntimeException e) {
+                        //连接池已被configure()或shutdown()关闭
+                        rejected = e;
+                    }
+                }
+                if (null != rejected) {
+                    failed(rejected);
+                    exchange.abort();
+                }
+            }
+
+            /**
+             * 超时，中止请求并关闭它的连接，同一主机排队的请求才能拿到连接
+             */
+            @Override
+            public void run() {
+                synchronized (this) {
+                    if (done) {
+                        return;
+                    }
+                    timedOut = true;
+                }
+                exchange.abort();
+            }
+
+            @Override
+            public void completed(HttpResponse response) {
+                HttpEntity entity = response.getEntity();
+                try {
+                    String body = null == entity ? null : EntityUtils.toString(entity, "UTF-8");
+                    complete(new FetchResult(request, response.getStatusLine().getStatusCode(), body, null));
+                } catch (IOException | RuntimeException e) {
+                    failed(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                complete(new FetchResult(request, -1, null, ex));
+            }
+
+            @Override
+            public void cancelled() {
+                Exception ex;
+                synchronized (this) {
+                    ex = timedOut ? new TimeoutException(String.format("请求超时(%dms): %s", timeoutMillis, request.getURI()))
+                            : new CancellationException("请求被取消: " + request.getURI());
+                }
+                failed(ex);
+            }
+
+            private void complete(FetchResult result) {
+                ScheduledFuture<?> pending;
+                synchronized (this) {
+                    if (done) {
+                        return;
+                    }
+                    done = true;
+                    pending = timeout;
+                }
+                if (null != pending) {
+                    pending.cancel(false);
+                }
+                finish(host, result);
+            }
+        }
+    }
+
+    /**
+     * 逐行读取的迭代器
+     */
+    private static final class LineIterator implements Iterator<String> {
+        private final BufferedReader reader;
+        private String next;
+        private boolean finished;
+
+        LineIterator(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (null == next && !finished) {
+                try {
+                    next = reader.readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                finished = null == next;
+            }
+            return null != next;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String line = next;
+            next = null;
+            return line;
+        }
+    }
+
+    /**
+     * 读取超过上限时抛出IOException的输入流
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private final long maxSize;
+        private long count;
+
+        BoundedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            //多读一个字节，以便恰好等于上限时也能正常读到结尾
+            int n = super.read(b, off, (int) Math.min(len, maxSize - count + 1));
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, maxSize - count + 1));
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long n) throws IOException {
+            count += n;
+            if (count > maxSize) {
+                throw new IOException(String.format("响应体超过上限%d字节", maxSize));
+            }
+        }
+    }
+
+    /**
+     * 可以中止的异步请求
+     * 异步HttpClient返回的Future取消后请求仍在进行，连接一直被占用到服务端响应为止；
+     * 执行请求时连接会放入HttpClientContext，中止时通过它取消连接上的请求处理器，连接随之关闭并还给连接池
+     * 中止时尚未拿到连接的请求，拿到连接并发出请求后立即取消
+     */
+    private static final class Exchange {
+        private final HttpClientContext context = HttpClientContext.create();
+        private final HttpAsyncRequestProducer producer;
+        private final HttpAsyncResponseConsumer<HttpResponse> consumer;
+        private Future<HttpResponse> future;
+        private boolean aborted;
+        //已收到完整响应，连接可能已还给连接池被其他请求使用，不能再取消
+        private boolean finished;
+
+        Exchange(HttpUriRequest request) {
+            producer = new Producer(HttpAsyncMethods.create(request));
+            consumer = new Consumer(HttpAsyncMethods.createConsumer());
+        }
+
+        /**
+         * 开始执行，回调可能在当前线程中直接发生
+         */
+        void start(CloseableHttpAsyncClient client, FutureCallback<HttpResponse> callback) {
+            Future<HttpResponse> started = client.execute(producer, consumer, context, callback);
+            synchronized (this) {
+                future = started;
+                if (!aborted) {
+                    return;
+                }
+            }
+            started.cancel(true);
+            cancelIfAborted();
+        }
+
+        /**
+         * 中止请求并关闭它占用的连接，回调收到cancelled
+         */
+        void abort() {
+            Future<HttpResponse> running;
+            synchronized (this) {
+                if (aborted) {
+                    return;
+                }
+                aborted = true;
+                running = future;
+            }
+            //先在锁外取消Future，回调不在锁内执行
+            if (null != running) {
+                running.cancel(true);
+            }
+            cancelIfAborted();
+        }
+
+        private synchronized boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * 取消连接上的请求处理器：它关闭连接并还给连接池；持锁执行，以免连接在此期间被释放给其他请求
+         */
+        private synchronized void cancelIfAborted() {
+            if (!aborted || finished) {
+                return;
+            }
+            Object connection = context.getAttribute(HttpCoreContext.HTTP_CONNECTION);
+            if (connection instanceof NHttpConnection) {
+                Object handler = ((NHttpConnection) connection).getContext().getAttribute(HttpAsyncRequestExecutor.HTTP_HANDLER);
+                if (handler instanceof Cancellable) {
+                    ((Cancellable) handler).cancel();
+                }
+            }
+        }
+
+        private synchronized void finish() {
+            finished = true;
+        }
+
+        /**
+         * 发出请求时检查是否已中止
+         */
+        private final class Producer implements HttpAsyncRequestProducer {
+            private final HttpAsyncRequestProducer delegate;
+
+            Producer(HttpAsyncRequestProducer delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public HttpHost getTarget() {
+                return delegate.getTarget();
+            }
+
+            @Override
+            public HttpRequest generateRequest() throws IOException, HttpException {
+                return delegate.generateRequest();
+            }
+
+            @Override
+            public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+                if (isAborted()) {
+                    //请求体不再发送
+                    cancelIfAborted();
+                    return;
+                }
+                delegate.produceContent(encoder, ioctrl);
+            }
+
+            @Override
+            public void requestCompleted(HttpContext context) {
+                delegate.requestCompleted(context);
+                cancelIfAborted();
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                delegate.failed(ex);
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return delegate.isRepeatable();
+            }
+
+            @Override
+            public void resetRequest() throws IOException {
+                delegate.resetRequest();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+        }
+
+        /**
+         * 在连接归还连接池之前记下请求已完成
+         */
+        private final class Consumer implements HttpAsyncResponseConsumer<HttpResponse> {
+            private final HttpAsyncResponseConsumer<HttpResponse> delegate;
+
+            Consumer(HttpAsyncResponseConsumer<HttpResponse> delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void responseReceived(HttpResponse response) throws IOException, HttpException {
+                delegate.responseReceived(response);
+            }
+
+            @Override
+            public void consumeContent(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+                delegate.consumeContent(decoder, ioctrl);
+            }
+
+            @Override
+            public void responseCompleted(HttpContext context) {
+                finish();
+                delegate.responseCompleted(context);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                delegate.failed(ex);
+            }
+
+            @Override
+            public Exception getException() {
+                return delegate.getException();
+            }
+
+            @Override
+            public HttpResponse getResult() {
+                return delegate.getResult();
+            }
+
+            @Override
+            public boolean isDone() {
+                return delegate.isDone();
+            }
+
+            @Override
+            public boolean cancel() {
+                return delegate.cancel();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+        }
+    }
+
+    /**
+     * 共享连接池：连接管理器 + HttpClient + 后台线程，异步HttpClient在首次使用时创建
+     */
+    private static final class Pool implements Closeable {
+        private final HttpClientConfig config;
+        private final PoolingHttpClientConnectionManager manager;
+        private final CloseableHttpClient client;
+        private final RequestConfig requestConfig;
+        private final ConnectionKeepAliveStrategy keepAliveStrategy;
+        //清理连接及批量请求超时用的后台线程
+        private final ScheduledThreadPoolExecutor scheduler;
+        //异步连接管理器与HttpClient
+        private PoolingNHttpClientConnectionManager asyncManager;
+        private CloseableHttpAsyncClient asyncClient;
+        private boolean closed;
+
+        Pool(final HttpClientConfig config) {
+            this.config = config;
+            manager = new PoolingHttpClientConnectionManager();
+            manager.setMaxTotal(config.getMaxTotal());
+            manager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+            requestConfig = RequestConfig.custom()
+                    .setConnectTimeout(config.getConnectTimeout())
+                    .setSocketTimeout(config.getSocketTimeout())
+                    .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                    .build();
+            keepAliveStrategy = new ConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                    //优先使用服务端Keep-Alive响应头中的timeout
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? duration : config.getKeepAliveMillis();
+                }
+            };
+            client = HttpClients.custom()
+                    .setConnectionManager(manager)
+                    .setDefaultRequestConfig(requestConfig)
+                    .setKeepAliveStrategy(keepAliveStrategy)
+                    .build();
+            scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "httpclient-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            //请求完成时取消的超时任务立即移出队列
+            scheduler.setRemoveOnCancelPolicy(true);
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    manager.closeExpiredConnections();
+                    manager.closeIdleConnections(config.getIdleTimeoutMillis(), TimeUnit.MILLISECONDS);
+                    PoolingNHttpClientConnectionManager async = asyncManager();
+                    if (null != async) {
+                        async.closeExpiredConnections();
+                        async.closeIdleConnections(config.getIdleTimeoutMillis(), TimeUnit.MILLISECONDS);
+                    }
+                }
+            }, config.getEvictIntervalMillis(), config.getEvictIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized PoolingNHttpClientConnectionManager asyncManager() {
+            return asyncManager;
+        }
+
+        /**
+         * 异步HttpClient，首次调用时创建并启动
+         */
+        synchronized CloseableHttpAsyncClient asyncClient() {
+            if (closed) {
+                throw new IllegalStateException("连接池已关闭!");
+            }
+            if (null == asyncClient) {
+                IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                        .setIoThreadCount(config.getIoThreads())
+                        .setConnectTimeout(config.getConnectTimeout())
+                        .setSoTimeout(config.getSocketTimeout())
+                        .build();
+                try {
+                    asyncManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig));
+                } catch (IOReactorException e) {
+                    throw new IllegalStateException("创建异步I/O反应器失败!", e);
+                }
+                asyncManager.setMaxTotal(config.getMaxTotal());
+                asyncManager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+                asyncClient = HttpAsyncClients.custom()
+                        .setConnectionManager(asyncManager)
+                        .setDefaultRequestConfig(requestConfig)
+                        .setKeepAliveStrategy(keepAliveStrategy)
+                        .build();
+                asyncClient.start();
+            }
+            return asyncClient;
+        }
+
+        @Override
+        public void close() {
+            scheduler.shutdown();
+            CloseableHttpAsyncClient async;
+            synchronized (this) {
+                closed = true;
+                async = asyncClient;
+            }
+            try {
+                client.close();
+                if (null != async) {
+                    async.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 }
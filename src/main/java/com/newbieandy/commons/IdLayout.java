@@ -0,0 +1,314 @@
+package com.newbieandy.commons;
+
+/**
+ * @Description: ID生成器的位布局（不可变）
+ * ID结构（最高位符号位恒为0）：
+ * 时间标识 + 处理中心ID + 工作机器ID + 毫秒内序列号(其中高clockSequenceBits位为时钟序列)
+ * 时间标识占用bit数 = 63 - 处理中心ID占用bit数 - 工作机器ID占用bit数 - 毫秒内序列号占用bit数
+ * 默认布局{@link #DEFAULT}与原实现一致：42位时间标识 + 3位处理中心ID + 6位工作机器ID + 12位序列号，
+ * 例如减少工作机器ID位数、增加序列号位数，可提高单节点每毫秒可生成的ID数：
+ * <pre>
+ * IdLayout layout = IdLayout.builder().workerIdBits(4).sequenceBits(14).build();
+ * </pre>
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public final class IdLayout {
+
+    //默认起始纪元时间(2016-05-17 13:53:22)
+    public static final long DEFAULT_TWEPOCH = 1463464402094L;
+    //时间标识最少占用bit数，2^35毫秒约为1年
+    public static final int MIN_TIMESTAMP_BITS = 35;
+
+    /**
+     * 默认布局：42位时间标识 + 3位处理中心ID + 6位工作机器ID + 12位序列号
+     */
+    public static final IdLayout DEFAULT = builder().build();
+
+    //起始纪元时间，时间标识 = 当前时间-此时间
+    private final long twepoch;
+    //时间标识占用bit数
+    private final int timestampBits;
+    //处理中心占用bit数
+    private final int datacenterIdBits;
+    //工作机器占用bit数
+    private final int workerIdBits;
+    //毫秒级内序列号占用bit数（含时钟序列）
+    private final int sequenceBits;
+    //时钟序列占用bit数，从毫秒内序列号的高位中预留
+    private final int clockSequenceBits;
+
+    private IdLayout(Builder builder) {
+        this.twepoch = builder.twepoch;
+        this.datacenterIdBits = builder.datacenterIdBits;
+        this.workerIdBits = builder.workerIdBits;
+        this.sequenceBits = builder.sequenceBits;
+        this.clockSequenceBits = builder.clockSequenceBits;
+        this.timestampBits = 63 - datacenterIdBits - workerIdBits - sequenceBits;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 以当前布局为基础创建构建器
+     *
+     * @return
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .twepoch(twepoch)
+                .datacenterIdBits(datacenterIdBits)
+                .workerIdBits(workerIdBits)
+                .sequenceBits(sequenceBits)
+                .clockSequenceBits(clockSequenceBits);
+    }
+
+    public long getTwepoch() {
+        return twepoch;
+    }
+
+    public int getTimestampBits() {
+        return timestampBits;
+    }
+
+    public int getDatacenterIdBits() {
+        return datacenterIdBits;
+    }
+
+    public int getWorkerIdBits() {
+        return workerIdBits;
+    }
+
+    public int getSequenceBits() {
+        return sequenceBits;
+    }
+
+    public int getClockSequenceBits() {
+        return clockSequenceBits;
+    }
+
+    /**
+     * 最大处理中心ID
+     */
+    public long getMaxDatacenterId() {
+        return -1L ^ (-1L << datacenterIdBits);
+    }
+
+    /**
+     * 最大工作机器ID
+     */
+    public long getMaxWorkerId() {
+        return -1L ^ (-1L << workerIdBits);
+    }
+
+    /**
+     * 工作机器ID左偏移量
+     */
+    public int getWorkerIdShift() {
+        return sequenceBits;
+    }
+
+    /**
+     * 处理中心ID左偏移量
+     */
+    public int getDatacenterIdShift() {
+        return sequenceBits + workerIdBits;
+    }
+
+    /**
+     * 时间标识左偏移量
+     */
+    public int getTimestampLeftShift() {
+        return sequenceBits + workerIdBits + datacenterIdBits;
+    }
+
+    //=======================================ID解析===============
+
+    /**
+     * 解析ID的生成时间(毫秒)
+     *
+     * @param id
+     * @return
+     */
+    public long timestampOf(long id) {
+        return (id >>> getTimestampLeftShift()) + twepoch;
+    }
+
+    /**
+     * 解析ID的处理中心ID
+     *
+     * @param id
+     * @return
+     */
+    public long datacenterOf(long id) {
+        return (id >>> getDatacenterIdShift()) & getMaxDatacenterId();
+    }
+
+    /**
+     * 解析ID的工作机器ID
+     *
+     * @param id
+     * @return
+     */
+    public long workerOf(long id) {
+        return (id >>> getWorkerIdShift()) & getMaxWorkerId();
+    }
+
+    /**
+     * 解析ID的毫秒内序列号（含时钟序列）
+     *
+     * @param id
+     * @return
+     */
+    public long sequenceOf(long id) {
+        return id & (-1L ^ (-1L << sequenceBits));
+    }
+
+    /**
+     * 指定时间生成的最小ID
+     * 时间早于起始纪元时间时返回0
+     *
+     * @param millis 时间(毫秒)
+     * @return
+     */
+    public long minIdForTime(long millis) {
+        if (millis <= twepoch) {
+            return 0L;
+        }
+        long maxTimestamp = -1L ^ (-1L << timestampBits);
+        return Math.min(millis - twepoch, maxTimestamp) << getTimestampLeftShift();
+    }
+
+    /**
+     * 指定时间生成的最大ID
+     * 时间范围[from, to]内生成的ID均落在[minIdForTime(from), maxIdForTime(to)]内，可直接用于主键范围扫描
+     *
+     * @param millis 时间(毫秒)
+     * @return
+     */
+    public long maxIdForTime(long millis) {
+        if (millis < twepoch) {
+            return -1L;
+        }
+        long maxTimestamp = -1L ^ (-1L << timestampBits);
+        long timestamp = Math.min(millis - twepoch, maxTimestamp);
+        return (timestamp << getTimestampLeftShift()) | (-1L ^ (-1L << getTimestampLeftShift()));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IdLayout)) {
+            return false;
+        }
+        IdLayout that = (IdLayout) o;
+        return twepoch == that.twepoch
+                && datacenterIdBits == that.datacenterIdBits
+                && workerIdBits == that.workerIdBits
+                && sequenceBits == that.sequenceBits
+                && clockSequenceBits == that.clockSequenceBits;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (twepoch ^ (twepoch >>> 32));
+        result = 31 * result + datacenterIdBits;
+        result = 31 * result + workerIdBits;
+        result = 31 * result + sequenceBits;
+        result = 31 * result + clockSequenceBits;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "IdLayout{" +
+                "twepoch=" + twepoch +
+                ", timestampBits=" + timestampBits +
+                ", datacenterIdBits=" + datacenterIdBits +
+                ", workerIdBits=" + workerIdBits +
+                ", sequenceBits=" + sequenceBits +
+                ", clockSequenceBits=" + clockSequenceBits +
+                '}';
+    }
+
+    /**
+     * 位布局构建器
+     */
+    public static final class Builder {
+        private long twepoch = DEFAULT_TWEPOCH;
+        private int datacenterIdBits = 3;
+        private int workerIdBits = 6;
+        private int sequenceBits = 12;
+        private int clockSequenceBits = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * 起始纪元时间(毫秒)
+         */
+        public Builder twepoch(long twepoch) {
+            this.twepoch = twepoch;
+            return this;
+        }
+
+        /**
+         * 处理中心ID占用bit数
+         */
+        public Builder datacenterIdBits(int datacenterIdBits) {
+            this.datacenterIdBits = datacenterIdBits;
+            return this;
+        }
+
+        /**
+         * 工作机器ID占用bit数
+         */
+        public Builder workerIdBits(int workerIdBits) {
+            this.workerIdBits = workerIdBits;
+            return this;
+        }
+
+        /**
+         * 毫秒内序列号占用bit数（含时钟序列）
+         */
+        public Builder sequenceBits(int sequenceBits) {
+            this.sequenceBits = sequenceBits;
+            return this;
+        }
+
+        /**
+         * 时钟序列占用bit数，从毫秒内序列号的高位中预留，仅CLOCK_SEQUENCE策略使用
+         */
+        public Builder clockSequenceBits(int clockSequenceBits) {
+            this.clockSequenceBits = clockSequenceBits;
+            return this;
+        }
+
+        public IdLayout build() {
+            if (twepoch < 0) {
+                throw new IllegalArgumentException(String.format("起始纪元时间不能小于0: %d", twepoch));
+            }
+            if (datacenterIdBits < 0 || workerIdBits < 0) {
+                throw new IllegalArgumentException(String.format(
+                        "处理中心ID与工作机器ID占用bit数不能小于0: %d, %d", datacenterIdBits, workerIdBits));
+            }
+            if (sequenceBits < 1) {
+                throw new IllegalArgumentException(String.format("毫秒内序列号占用bit数不能小于1: %d", sequenceBits));
+            }
+            if (clockSequenceBits < 0 || clockSequenceBits >= sequenceBits) {
+                throw new IllegalArgumentException(String.format(
+                        "时钟序列占用bit数必须在0-%d之间: %d", sequenceBits - 1, clockSequenceBits));
+            }
+            int timestampBits = 63 - datacenterIdBits - workerIdBits - sequenceBits;
+            if (timestampBits < MIN_TIMESTAMP_BITS) {
+                throw new IllegalArgumentException(String.format(
+                        "时间标识占用bit数不能小于%d，当前为%d", MIN_TIMESTAMP_BITS, timestampBits));
+            }
+            return new IdLayout(this);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.newbieandy.commons;
 
-import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.regex.Pattern;
 
 /**
@@ -13,39 +14,80 @@ import java.util.regex.Pattern;
  * 注意：每个运行环境的环境变量要保证彼此唯一，
  * 即 相同的处理中心ID后不能配置重复的工作机器ID
  * 例如. 1_2
+ * 也可以通过{@link WorkerIdAllocator}自动申请工作机器ID，例如{@link FileWorkerIdAllocator}，
+ * 租约失效后生成器拒绝生成ID
+ * 二.时钟回拨默认抛出异常，可通过{@link #setClockBackwardsPolicy(ClockBackwardsPolicy)}改为等待、
+ * 借用逻辑时钟或占用时钟序列位，各策略的触发次数可通过对应的get方法获取
+ * 三.时钟默认为系统时钟，可通过{@link #setTimeSource(TimeSource)}改为缓存时钟或单调时钟
  * @Author: machao
  * @Date:2016/5/17
  * @Version:1.0.0
  */
 public class IdWorker {
 
-    private long workerId;
-    private long datacenterId;
+    //等待下一毫秒时每次让出CPU的纳秒数
+    private static final long PARK_NANOS = 50000L;
+
+    //位布局
+    protected final IdLayout layout;
+    protected final long workerId;
+    protected final long datacenterId;
+    //工作机器ID租约，直接指定ID时为null
+    private final WorkerIdLease workerIdLease;
     //毫秒级内序列号
     private long sequence = 0L;
-    //起始纪元时间(2016-05-17 13:53:22)，时间标识 = 当前时间-此时间
-    private long twepoch = 1463464402094L;
+    //起始纪元时间，时间标识 = 当前时间-此时间
+    protected final long twepoch;
     //工作机器占用bit数
-    private long workerIdBits = 6L;
+    protected final long workerIdBits;
     //处理中心占用bit数
-    private long datacenterIdBits = 3L;
-    //最大工作机器ID 111111 -> 64
-    private long maxWorkerId = -1L ^ (-1L << workerIdBits);
-    //最大处理中心ID 111 -> 8
-    private long maxDatacenterId = -1L ^ (-1L << datacenterIdBits);
+    protected final long datacenterIdBits;
+    //最大工作机器ID，默认 111111 -> 63
+    protected final long maxWorkerId;
+    //最大处理中心ID，默认 111 -> 7
+    protected final long maxDatacenterId;
     //毫秒级内序列号占用bit数
-    private long sequenceBits = 12L;
-    //工作机器ID左偏移量 12
-    private long workerIdShift = sequenceBits;
-    //处理中心ID左偏移量 12+6=18
-    private long datacenterIdShift = sequenceBits + workerIdBits;
-    //时间标识左偏移量 12+6+3=21
-    private long timestampLeftShift = sequenceBits + workerIdBits + datacenterIdBits;
+    protected final long sequenceBits;
+    //工作机器ID左偏移量，默认 12
+    protected final long workerIdShift;
+    //处理中心ID左偏移量，默认 12+6=18
+    protected final long datacenterIdShift;
+    //时间标识左偏移量，默认 12+6+3=21
+    protected final long timestampLeftShift;
     //毫秒级内序列号掩码（最大值）
-    private long sequenceMask = -1L ^ (-1L << sequenceBits);
+    protected final long sequenceMask;
+    //时钟序列占用bit数，从毫秒内序列号的高位中预留，仅CLOCK_SEQUENCE策略使用
+    protected final long clockSequenceBits;
+    //时钟序列掩码（最大值）
+    private final long clockSequenceMask;
+    //毫秒内计数器占用bit数 = 毫秒内序列号占用bit数 - 时钟序列占用bit数
+    private final long counterBits;
+    //毫秒内计数器掩码（最大值）
+    private final long counterMask;
 
     //上次生成ID的时间标记
     private long lastTimestamp = -1L;
+    //当前时钟序列，每次时钟回拨+1
+    private long clockSequence = 0L;
+    //新毫秒的起始序列号策略
+    private volatile SequenceStarter sequenceStarter = SequenceStarter.THREAD_LOCAL_RANDOM;
+    //毫秒时钟
+    private volatile TimeSource timeSource = TimeSource.SYSTEM;
+    //时钟回拨处理策略
+    private volatile ClockBackwardsPolicy clockBackwardsPolicy = ClockBackwardsPolicy.FAIL;
+    //WAIT策略允许等待的最大回拨毫秒数
+    private volatile long maxBackwardsMillis = 10L;
+
+    //检测到时钟回拨的次数
+    private final AtomicLong clockBackwardsCount = new AtomicLong();
+    //因时钟回拨抛出异常的次数
+    private final AtomicLong clockBackwardsFailures = new AtomicLong();
+    //WAIT策略等待的次数
+    private final AtomicLong clockBackwardsWaits = new AtomicLong();
+    //LOGICAL_CLOCK策略借用逻辑时钟的次数
+    private final AtomicLong logicalClockBorrows = new AtomicLong();
+    //CLOCK_SEQUENCE策略时钟序列+1的次数
+    private final AtomicLong clockSequenceBumps = new AtomicLong();
 
     /**
      * 创建ID生成器
@@ -54,6 +96,78 @@ public class IdWorker {
      * @param datacenterId 处理中心ID(0-7，此值不可重复)
      */
     public IdWorker(long workerId, long datacenterId) {
+        this(IdLayout.DEFAULT, workerId, datacenterId);
+    }
+
+    /**
+     * 创建ID生成器，并为CLOCK_SEQUENCE策略预留时钟序列位
+     *
+     * @param workerId          工作机器ID(0-63,同处理中心下机器ID不可重复)
+     * @param datacenterId      处理中心ID(0-7，此值不可重复)
+     * @param clockSequenceBits 时钟序列占用bit数(0-11)，每毫秒可生成的ID数相应减少为 2^(12-clockSequenceBits)
+     */
+    public IdWorker(long workerId, long datacenterId, int clockSequenceBits) {
+        this(IdLayout.DEFAULT.toBuilder().clockSequenceBits(clockSequenceBits).build(), workerId, datacenterId);
+    }
+
+    /**
+     * 按指定位布局创建ID生成器
+     *
+     * @param layout       位布局
+     * @param workerId     工作机器ID(0-最大工作机器ID,同处理中心下机器ID不可重复)
+     * @param datacenterId 处理中心ID(0-最大处理中心ID，此值不可重复)
+     */
+    public IdWorker(IdLayout layout, long workerId, long datacenterId) {
+        this(layout, workerId, datacenterId, null);
+    }
+
+    /**
+     * 通过分配器申请工作机器ID创建ID生成器
+     * 租约可通过{@link #getWorkerIdLease()}获取，不再使用时应释放
+     *
+     * @param layout    位布局
+     * @param allocator 工作机器ID分配器
+     */
+    public IdWorker(IdLayout layout, WorkerIdAllocator allocator) {
+        this(layout, allocator.acquire(layout));
+    }
+
+    /**
+     * 使用已申请的工作机器ID租约创建ID生成器，租约失效后拒绝生成ID
+     *
+     * @param layout 位布局
+     * @param lease  工作机器ID租约
+     */
+    public IdWorker(IdLayout layout, WorkerIdLease lease) {
+        this(layout, lease.getWorkerId(), lease.getDatacenterId(), lease);
+    }
+
+    /**
+     * 创建ID生成器，读取环境变量 IDWORKER_CONFIG
+     */
+    public IdWorker() {
+        this(IdLayout.DEFAULT, WorkerIdAllocator.ENVIRONMENT);
+    }
+
+    private IdWorker(IdLayout layout, long workerId, long datacenterId, WorkerIdLease workerIdLease) {
+        if (null == layout) {
+            throw new IllegalArgumentException("位布局不能为空!");
+        }
+        this.layout = layout;
+        this.twepoch = layout.getTwepoch();
+        this.workerIdBits = layout.getWorkerIdBits();
+        this.datacenterIdBits = layout.getDatacenterIdBits();
+        this.maxWorkerId = layout.getMaxWorkerId();
+        this.maxDatacenterId = layout.getMaxDatacenterId();
+        this.sequenceBits = layout.getSequenceBits();
+        this.workerIdShift = layout.getWorkerIdShift();
+        this.datacenterIdShift = layout.getDatacenterIdShift();
+        this.timestampLeftShift = layout.getTimestampLeftShift();
+        this.sequenceMask = -1L ^ (-1L << sequenceBits);
+        this.clockSequenceBits = layout.getClockSequenceBits();
+        this.clockSequenceMask = -1L ^ (-1L << clockSequenceBits);
+        this.counterBits = sequenceBits - clockSequenceBits;
+        this.counterMask = -1L ^ (-1L << counterBits);
         // 验证输入的工作机器ID是否合法
         if (workerId > maxWorkerId || workerId < 0) {
             throw new IllegalArgumentException(
@@ -66,33 +180,83 @@ public class IdWorker {
         }
         this.workerId = workerId;
         this.datacenterId = datacenterId;
+        this.workerIdLease = workerIdLease;
+    }
+
+    public IdLayout getLayout() {
+        return layout;
     }
 
     /**
-     * 创建ID生成器
+     * 工作机器ID租约，直接指定工作机器ID创建时返回null
+     *
+     * @return
      */
-    public IdWorker() {
-        //获取环境变量
-        String idworkerConfig = System.getenv("IDWORKER_CONFIG");
-        //判断环境变量是否合法
-        if (null == idworkerConfig || !configVerify(idworkerConfig)) {
-            throw new RuntimeException("IDWORKER_CONFIG环境变量配置错误！");
-        }
-        String[] configArgs = idworkerConfig.split("_");
-        long sysDatacenterId = String2long(configArgs[0]);
-        long sysWorkerId = String2long(configArgs[1]);
-        // 验证输入的工作机器ID是否合法
-        if (sysWorkerId > maxWorkerId || sysWorkerId < 0) {
-            throw new IllegalArgumentException(
-                    String.format("工作机器ID不能大于%d或者小于0!", maxWorkerId));
-        }
-        //验证输入的处理中心ID是否合法
-        if (sysDatacenterId > maxDatacenterId || sysDatacenterId < 0) {
-            throw new IllegalArgumentException(
-                    String.format("处理中心ID不能大于%d或者小于0!", maxDatacenterId));
-        }
-        this.workerId = sysWorkerId;
-        this.datacenterId = sysDatacenterId;
+    public WorkerIdLease getWorkerIdLease() {
+        return workerIdLease;
+    }
+
+    //=======================================按默认位布局解析ID===============
+    //自定义位布局的ID使用 IdLayout 的同名方法解析
+
+    /**
+     * 解析ID的生成时间(毫秒)
+     *
+     * @param id
+     * @return
+     */
+    public static long timestampOf(long id) {
+        return IdLayout.DEFAULT.timestampOf(id);
+    }
+
+    /**
+     * 解析ID的处理中心ID
+     *
+     * @param id
+     * @return
+     */
+    public static long datacenterOf(long id) {
+        return IdLayout.DEFAULT.datacenterOf(id);
+    }
+
+    /**
+     * 解析ID的工作机器ID
+     *
+     * @param id
+     * @return
+     */
+    public static long workerOf(long id) {
+        return IdLayout.DEFAULT.workerOf(id);
+    }
+
+    /**
+     * 解析ID的毫秒内序列号
+     *
+     * @param id
+     * @return
+     */
+    public static long sequenceOf(long id) {
+        return IdLayout.DEFAULT.sequenceOf(id);
+    }
+
+    /**
+     * 指定时间生成的最小ID
+     *
+     * @param millis 时间(毫秒)
+     * @return
+     */
+    public static long minIdForTime(long millis) {
+        return IdLayout.DEFAULT.minIdForTime(millis);
+    }
+
+    /**
+     * 指定时间生成的最大ID
+     *
+     * @param millis 时间(毫秒)
+     * @return
+     */
+    public static long maxIdForTime(long millis) {
+        return IdLayout.DEFAULT.maxIdForTime(millis);
     }
 
 
@@ -105,36 +269,323 @@ public class IdWorker {
         long timestamp = timeGen();
 
         if (timestamp < lastTimestamp) {
-            throw new RuntimeException(String
-                    .format("时间被调回，导致上次生成ID时间大于本次时间，不能生成ID，两次相差%d毫秒！",
-                            lastTimestamp - timestamp));
+            //时钟回拨，按策略处理
+            timestamp = resolveClockBackwards(timestamp);
         }
 
         //同一毫秒级内操作
         if (lastTimestamp == timestamp) {
             //毫秒级内序列号进行+1操作,并验证
-            sequence = (sequence + 1) & sequenceMask;
+            sequence = (sequence + 1) & counterMask;
             //当前毫秒内，序列号已用完（1111 1111 1111 -> 4096）
             if (sequence == 0) {
                 //等待下一毫秒
-                timestamp = tilNextMillis(lastTimestamp);
+                timestamp = nextMillis(lastTimestamp);
             }
         } else {
-            //非同一毫秒级内，理论上计数器归零
-            //sequence = 0;
-            //但为保证尾数随机性大一些，毫秒级计数器归为0-9的随机数
-            sequence = new SecureRandom().nextInt(10);
+            //非同一毫秒级内，计数器取新毫秒的起始序列号
+            sequence = initialSequence();
         }
 
         //当前生成ID时间设置为最后生成时间
         lastTimestamp = timestamp;
         //进行bit拼接
         return ((timestamp - twepoch) << timestampLeftShift) | (datacenterId << datacenterIdShift) | (
-                workerId << workerIdShift) | sequence;
+                workerId << workerIdShift) | (clockSequence << counterBits) | sequence;
+    }
+
+    /**
+     * 批量获取全局自增唯一ID
+     *
+     * @param n 获取数量
+     * @return
+     */
+    public long[] nextIds(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException(String.format("获取数量不能小于0: %d", n));
+        }
+        long[] ids = new long[n];
+        nextIds(ids, 0, n);
+        return ids;
+    }
+
+    /**
+     * 批量获取全局自增唯一ID，填满传入的数组
+     *
+     * @param dst 存放ID的数组
+     */
+    public void nextIds(long[] dst) {
+        nextIds(dst, 0, dst.length);
+    }
+
+    /**
+     * 批量获取全局自增唯一ID
+     * 在一次加锁内预留连续的序列号，可跨越多个毫秒，每毫秒只读取一次时钟，不额外分配内存
+     *
+     * @param dst    存放ID的数组
+     * @param offset 起始下标
+     * @param length 获取数量
+     */
+    public synchronized void nextIds(long[] dst, int offset, int length) {
+        checkRange(dst, offset, length);
+        int i = offset;
+        int end = offset + length;
+        long timestamp = timeGen();
+
+        if (timestamp < lastTimestamp) {
+            //时钟回拨，按策略处理
+            timestamp = resolveClockBackwards(timestamp);
+        }
+
+        long nodeBits = (datacenterId << datacenterIdShift) | (workerId << workerIdShift)
+                | (clockSequence << counterBits);
+        while (i < end) {
+            if (lastTimestamp == timestamp) {
+                //当前毫秒内剩余的序列号一次性用完
+                long timeBits = ((timestamp - twepoch) << timestampLeftShift) | nodeBits;
+                long seq = sequence;
+                while (i < end && seq < counterMask) {
+                    dst[i++] = timeBits | ++seq;
+                }
+                sequence = seq;
+                if (i < end) {
+                    //等待下一毫秒
+                    timestamp = nextMillis(lastTimestamp);
+                }
+            } else {
+                sequence = initialSequence();
+                lastTimestamp = timestamp;
+                dst[i++] = ((timestamp - twepoch) << timestampLeftShift) | nodeBits | sequence;
+            }
+        }
+    }
+
+    /**
+     * 验证批量获取的数组区间是否合法
+     *
+     * @param dst
+     * @param offset
+     * @param length
+     */
+    protected static void checkRange(long[] dst, int offset, int length) {
+        if (null == dst) {
+            throw new IllegalArgumentException("存放ID的数组不能为空!");
+        }
+        if (offset < 0 || length < 0 || offset > dst.length - length) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "数组区间越界: offset=%d, length=%d, 数组长度=%d", offset, length, dst.length));
+        }
+    }
+
+    /**
+     * 新毫秒的起始序列号
+     * 理论上计数器归零，但为保证尾数随机性大一些，默认毫秒级计数器归为0-9的随机数
+     *
+     * @return
+     */
+    protected long initialSequence() {
+        return sequenceStarter.initialSequence() & counterMask;
+    }
+
+    public SequenceStarter getSequenceStarter() {
+        return sequenceStarter;
+    }
+
+    /**
+     * 设置新毫秒的起始序列号策略，默认为{@link SequenceStarter#THREAD_LOCAL_RANDOM}
+     * 需要与原实现相同的强随机尾数时使用{@link SequenceStarter#SECURE_RANDOM}
+     *
+     * @param sequenceStarter
+     */
+    public void setSequenceStarter(SequenceStarter sequenceStarter) {
+        if (null == sequenceStarter) {
+            throw new IllegalArgumentException("起始序列号策略不能为空!");
+        }
+        this.sequenceStarter = sequenceStarter;
+    }
+
+    /**
+     * 持有锁时处理时钟回拨，CLOCK_SEQUENCE策略在此切换时钟序列，其余策略交给{@link #clockBackwards(long, long)}
+     *
+     * @param timestamp 本次获取的时间
+     * @return 用于生成ID的时间
+     */
+    private long resolveClockBackwards(long timestamp) {
+        if (clockBackwardsPolicy == ClockBackwardsPolicy.CLOCK_SEQUENCE && clockSequenceBits > 0) {
+            clockBackwardsCount.incrementAndGet();
+            clockSequenceBumps.incrementAndGet();
+            clockSequence = (clockSequence + 1) & clockSequenceMask;
+            //按新的毫秒重新开始计数
+            lastTimestamp = -1L;
+            return timestamp;
+        }
+        return clockBackwards(lastTimestamp, timestamp);
+    }
+
+    /**
+     * 按策略处理时钟回拨
+     *
+     * @param lastTimestamp 上次生成ID的时间
+     * @param timestamp     本次获取的时间，小于lastTimestamp
+     * @return 用于生成ID的时间，不小于lastTimestamp
+     */
+    protected long clockBackwards(long lastTimestamp, long timestamp) {
+        clockBackwardsCount.incrementAndGet();
+        long offset = lastTimestamp - timestamp;
+        switch (clockBackwardsPolicy) {
+            case WAIT:
+                if (offset <= maxBackwardsMillis) {
+                    clockBackwardsWaits.incrementAndGet();
+                    return waitUntil(lastTimestamp);
+                }
+                break;
+            case LOGICAL_CLOCK:
+                logicalClockBorrows.incrementAndGet();
+                return lastTimestamp;
+            default:
+                break;
+        }
+        clockBackwardsFailures.incrementAndGet();
+        throw new RuntimeException(String
+                .format("时间被调回，导致上次生成ID时间大于本次时间，不能生成ID，两次相差%d毫秒！", offset));
+    }
+
+    /**
+     * 休眠等待时钟追上指定时间
+     *
+     * @param lastTimestamp
+     * @return
+     */
+    private long waitUntil(long lastTimestamp) {
+        long timestamp = timeGen();
+        while (timestamp < lastTimestamp) {
+            try {
+                Thread.sleep(lastTimestamp - timestamp);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待时钟回拨恢复时被中断！", e);
+            }
+            timestamp = timeGen();
+        }
+        return timestamp;
+    }
+
+    /**
+     * 当前毫秒序列号用完后取下一毫秒
+     * LOGICAL_CLOCK策略下系统时钟仍落后于逻辑时钟时，直接借用逻辑时间+1，不等待系统时钟
+     *
+     * @param lastTimestamp
+     * @return
+     */
+    protected long nextMillis(long lastTimestamp) {
+        if (clockBackwardsPolicy == ClockBackwardsPolicy.LOGICAL_CLOCK && timeGen() < lastTimestamp) {
+            logicalClockBorrows.incrementAndGet();
+            return lastTimestamp + 1;
+        }
+        return tilNextMillis(lastTimestamp);
+    }
+
+    /**
+     * 是否支持CLOCK_SEQUENCE策略，子类不在ID中拼接时钟序列时返回false
+     *
+     * @return
+     */
+    protected boolean supportsClockSequence() {
+        return true;
+    }
+
+    public ClockBackwardsPolicy getClockBackwardsPolicy() {
+        return clockBackwardsPolicy;
+    }
+
+    /**
+     * 设置时钟回拨处理策略，默认为{@link ClockBackwardsPolicy#FAIL}
+     * CLOCK_SEQUENCE策略需要创建生成器时预留时钟序列位
+     *
+     * @param clockBackwardsPolicy
+     */
+    public void setClockBackwardsPolicy(ClockBackwardsPolicy clockBackwardsPolicy) {
+        if (null == clockBackwardsPolicy) {
+            throw new IllegalArgumentException("时钟回拨处理策略不能为空!");
+        }
+        if (clockBackwardsPolicy == ClockBackwardsPolicy.CLOCK_SEQUENCE
+                && (clockSequenceBits == 0 || !supportsClockSequence())) {
+            throw new IllegalArgumentException("未预留时钟序列位，不能使用CLOCK_SEQUENCE策略!");
+        }
+        this.clockBackwardsPolicy = clockBackwardsPolicy;
+    }
+
+    public long getMaxBackwardsMillis() {
+        return maxBackwardsMillis;
+    }
+
+    /**
+     * 设置WAIT策略允许等待的最大回拨毫秒数，默认10毫秒
+     *
+     * @param maxBackwardsMillis
+     */
+    public void setMaxBackwardsMillis(long maxBackwardsMillis) {
+        if (maxBackwardsMillis < 0) {
+            throw new IllegalArgumentException(String.format("最大回拨毫秒数不能小于0: %d", maxBackwardsMillis));
+        }
+        this.maxBackwardsMillis = maxBackwardsMillis;
+    }
+
+    /**
+     * 检测到时钟回拨的次数
+     */
+    public long getClockBackwardsCount() {
+        return clockBackwardsCount.get();
+    }
+
+    /**
+     * 因时钟回拨抛出异常的次数
+     */
+    public long getClockBackwardsFailures() {
+        return clockBackwardsFailures.get();
+    }
+
+    /**
+     * WAIT策略等待的次数
+     */
+    public long getClockBackwardsWaits() {
+        return clockBackwardsWaits.get();
+    }
+
+    /**
+     * LOGICAL_CLOCK策略借用逻辑时钟的次数（含回拨期间序列号用完后逻辑时间+1）
+     */
+    public long getLogicalClockBorrows() {
+        return logicalClockBorrows.get();
+    }
+
+    /**
+     * CLOCK_SEQUENCE策略时钟序列+1的次数
+     */
+    public long getClockSequenceBumps() {
+        return clockSequenceBumps.get();
+    }
+
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * 设置毫秒时钟，默认为{@link TimeSource#SYSTEM}
+     * 缓存时钟避免每个ID读取一次系统时钟，单调时钟不受系统时间调整影响
+     *
+     * @param timeSource
+     */
+    public void setTimeSource(TimeSource timeSource) {
+        if (null == timeSource) {
+            throw new IllegalArgumentException("毫秒时钟不能为空!");
+        }
+        this.timeSource = timeSource;
     }
 
     /**
      * 等待下一毫秒
+     * 每次检查之间让出CPU，不空转占满一个核
      *
      * @param lastTimestamp
      * @return
@@ -142,18 +593,24 @@ public class IdWorker {
     protected long tilNextMillis(long lastTimestamp) {
         long timestamp = timeGen();
         while (timestamp <= lastTimestamp) {
+            LockSupport.parkNanos(PARK_NANOS);
             timestamp = timeGen();
         }
         return timestamp;
     }
 
     /**
-     * 获取系统当前时间
+     * 获取当前时间
      *
      * @return
      */
     protected long timeGen() {
-        return System.currentTimeMillis();
+        long timestamp = timeSource.currentTimeMillis();
+        if (null != workerIdLease && !workerIdLease.isValid(timestamp)) {
+            throw new IllegalStateException(String.format("工作机器ID租约已失效，不能生成ID！处理中心ID:%d, 工作机器ID:%d",
+                    datacenterId, workerId), workerIdLease.getFailure());
+        }
+        return timestamp;
     }
 
     /**
@@ -163,9 +620,7 @@ public class IdWorker {
      * @return
      */
     protected boolean configVerify(String environmentVar) {
-        String reg = "^[0-7]_[0-9]{1,2}$";
-        Pattern pattern = Pattern.compile(reg);
-        return pattern.matcher(environmentVar).matches();
+        return isValidConfig(environmentVar);
     }
 
     /**
@@ -175,6 +630,22 @@ public class IdWorker {
      * @return
      */
     protected long String2long(String value) {
+        return parseConfigLong(value);
+    }
+
+    /**
+     * 验证环境变量的值是否符合要求，供{@link WorkerIdAllocator#ENVIRONMENT}使用
+     */
+    static boolean isValidConfig(String environmentVar) {
+        String reg = "^[0-7]_[0-9]{1,2}$";
+        Pattern pattern = Pattern.compile(reg);
+        return pattern.matcher(environmentVar).matches();
+    }
+
+    /**
+     * 配置的字符串转long类型，供{@link WorkerIdAllocator#ENVIRONMENT}使用
+     */
+    static long parseConfigLong(String value) {
         try {
             return Long.parseLong(value);
         } catch (Exception e) {
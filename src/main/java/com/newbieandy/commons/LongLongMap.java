@@ -0,0 +1,105 @@
+package com.newbieandy.commons;
+
+/**
+ * @Description: long -> long 的开放寻址哈希表（线性探测），不为每个元素创建对象
+ * 删除时向后移动探测链上的元素，不留删除标记；供本包内需要避免装箱的索引结构使用，非线程安全
+ * @Author: machao
+ * @Version:1.0.0
+ */
+final class LongLongMap {
+    private long[] keys = new long[16];
+    private long[] values = new long[16];
+    private boolean[] used = new boolean[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(long key) {
+        return used[slot(key)];
+    }
+
+    /**
+     * 调用前需确认key存在
+     */
+    long get(long key) {
+        return values[slot(key)];
+    }
+
+    /**
+     * @return key不存在时返回missing
+     */
+    long get(long key, long missing) {
+        int slot = slot(key);
+        return used[slot] ? values[slot] : missing;
+    }
+
+    void put(long key, long value) {
+        int slot = slot(key);
+        if (!used[slot]) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize();
+                slot = slot(key);
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    void remove(long key) {
+        int slot = slot(key);
+        if (!used[slot]) {
+            return;
+        }
+        size--;
+        //向后移动探测链上的元素，填补空位
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; used[i]; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        used[hole] = false;
+    }
+
+    /**
+     * key所在的槽位，不存在时为应插入的空槽位
+     */
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (used[i] && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldKeys[i]);
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
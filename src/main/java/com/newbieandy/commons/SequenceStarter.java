@@ -0,0 +1,98 @@
+package com.newbieandy.commons;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Description: ID生成器进入新毫秒时的起始序列号策略
+ * 实现类需保证线程安全，且返回值不小于0
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public interface SequenceStarter {
+
+    /**
+     * 起始序列号取值上限（不含），与原实现的0-9尾数一致
+     */
+    int DEFAULT_BOUND = 10;
+
+    /**
+     * 每毫秒序列号从0开始
+     */
+    SequenceStarter ZERO = new SequenceStarter() {
+        @Override
+        public long initialSequence() {
+            return 0L;
+        }
+    };
+
+    /**
+     * 0-9的线程本地伪随机数，不分配对象，不访问熵池
+     */
+    SequenceStarter THREAD_LOCAL_RANDOM = new SequenceStarter() {
+        @Override
+        public long initialSequence() {
+            return ThreadLocalRandom.current().nextInt(DEFAULT_BOUND);
+        }
+    };
+
+    /**
+     * 0-9的强随机数，共用一个SecureRandom实例，随机性与原实现相同
+     */
+    SequenceStarter SECURE_RANDOM = new SequenceStarter() {
+        private final SecureRandom random = new SecureRandom();
+
+        @Override
+        public long initialSequence() {
+            return random.nextInt(DEFAULT_BOUND);
+        }
+    };
+
+    /**
+     * 0-9的预生成随机数表，运行时只做一次数组读取
+     */
+    SequenceStarter RANDOM_TABLE = new RandomTable(1024, DEFAULT_BOUND);
+
+    /**
+     * 获取新毫秒的起始序列号
+     *
+     * @return
+     */
+    long initialSequence();
+
+    /**
+     * 预生成随机数表
+     * 类加载时用SecureRandom填充，之后按游标循环读取
+     */
+    class RandomTable implements SequenceStarter {
+        private final long[] table;
+        private final int mask;
+        //游标的并发竞争只影响读到哪一项，不影响正确性，故不加同步
+        private int cursor;
+
+        /**
+         * @param size  表大小，必须为2的幂
+         * @param bound 随机数取值上限（不含）
+         */
+        public RandomTable(int size, int bound) {
+            if (size <= 0 || (size & (size - 1)) != 0) {
+                throw new IllegalArgumentException(String.format("随机数表大小必须为2的幂: %d", size));
+            }
+            if (bound <= 0) {
+                throw new IllegalArgumentException(String.format("随机数上限必须大于0: %d", bound));
+            }
+            SecureRandom random = new SecureRandom();
+            this.table = new long[size];
+            for (int i = 0; i < size; i++) {
+                table[i] = random.nextInt(bound);
+            }
+            this.mask = size - 1;
+        }
+
+        @Override
+        public long initialSequence() {
+            int i = cursor++;
+            return table[i & mask];
+        }
+    }
+}
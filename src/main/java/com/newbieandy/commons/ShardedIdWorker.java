@@ -0,0 +1,210 @@
+package com.newbieandy.commons;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Description: 分道的全局唯一自增ID生成器
+ * 将毫秒内序列号(默认12位)拆分为 laneBits位通道号 + 剩余位数的通道内序列号，
+ * 线程首次使用时按轮询分配一个固定通道，每个通道独立维护自己的时间标识与序列号，
+ * 状态分布在不同缓存行上，不同通道之间没有共享写入
+ * ID结构：时间标识 + 处理中心ID + 工作机器ID + laneBits位通道号 + 通道内序列号
+ * 通道号不同的ID必然不同，因此全局唯一；时间标识在高位，因此按毫秒粗略有序
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public class ShardedIdWorker extends IdWorker {
+
+    //每个通道状态之间间隔的long数，16*8=128字节，避免伪共享与相邻缓存行预取
+    private static final int PADDING = 16;
+
+    //通道号掩码
+    private final int laneMask;
+    //通道内序列号占用bit数
+    private final long laneSequenceBits;
+    //通道内序列号掩码（最大值）
+    private final long laneSequenceMask;
+    //处理中心ID与工作机器ID拼接后的固定位
+    private final long nodeBits;
+    //各通道打包状态：高位为时间标识(当前时间-twepoch)，低laneSequenceBits位为通道内序列号
+    private final AtomicLongArray lanes;
+    //下一个待分配的通道号
+    private final AtomicInteger laneCursor = new AtomicInteger();
+    //线程固定使用的通道号
+    private final ThreadLocal<Integer> threadLane = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return laneCursor.getAndIncrement() & laneMask;
+        }
+    };
+
+    /**
+     * 创建ID生成器
+     *
+     * @param workerId     工作机器ID(0-63,同处理中心下机器ID不可重复)
+     * @param datacenterId 处理中心ID(0-7，此值不可重复)
+     * @param laneBits     通道号占用bit数(1-8)，通道数为2^laneBits，每通道每毫秒可生成2^(12-laneBits)个ID
+     */
+    public ShardedIdWorker(long workerId, long datacenterId, int laneBits) {
+        this(IdLayout.DEFAULT, workerId, datacenterId, laneBits);
+    }
+
+    /**
+     * 按指定位布局创建ID生成器
+     *
+     * @param layout       位布局
+     * @param workerId     工作机器ID
+     * @param datacenterId 处理中心ID
+     * @param laneBits     通道号占用bit数，取值1-8且小于毫秒内序列号占用bit数
+     */
+    public ShardedIdWorker(IdLayout layout, long workerId, long datacenterId, int laneBits) {
+        super(layout, workerId, datacenterId);
+        this.laneMask = (1 << checkLaneBits(laneBits)) - 1;
+        this.laneSequenceBits = sequenceBits - laneBits;
+        this.laneSequenceMask = -1L ^ (-1L << laneSequenceBits);
+        this.nodeBits = (this.datacenterId << datacenterIdShift) | (this.workerId << workerIdShift);
+        this.lanes = new AtomicLongArray((laneMask + 1) * PADDING);
+    }
+
+    /**
+     * 通过分配器申请工作机器ID创建ID生成器
+     *
+     * @param layout    位布局
+     * @param allocator 工作机器ID分配器
+     * @param laneBits  通道号占用bit数，取值1-8且小于毫秒内序列号占用bit数
+     */
+    public ShardedIdWorker(IdLayout layout, WorkerIdAllocator allocator, int laneBits) {
+        super(layout, allocator);
+        this.laneMask = (1 << checkLaneBits(laneBits)) - 1;
+        this.laneSequenceBits = sequenceBits - laneBits;
+        this.laneSequenceMask = -1L ^ (-1L << laneSequenceBits);
+        this.nodeBits = (this.datacenterId << datacenterIdShift) | (this.workerId << workerIdShift);
+        this.lanes = new AtomicLongArray((laneMask + 1) * PADDING);
+    }
+
+    /**
+     * 验证通道号占用bit数是否合法
+     *
+     * @param laneBits
+     * @return
+     */
+    private int checkLaneBits(int laneBits) {
+        long maxLaneBits = Math.min(8L, sequenceBits - 1);
+        if (laneBits < 1 || laneBits > maxLaneBits) {
+            throw new IllegalArgumentException(String.format("通道号占用bit数必须在1-%d之间: %d", maxLaneBits, laneBits));
+        }
+        return laneBits;
+    }
+
+    /**
+     * 获取全局自增唯一ID
+     *
+     * @return
+     */
+    @Override
+    public long nextId() {
+        int lane = currentLane();
+        int index = lane * PADDING;
+        for (; ; ) {
+            long current = lanes.get(index);
+            long lastTimestamp = current >>> laneSequenceBits;
+            long timestamp = timeGen() - twepoch;
+
+            if (timestamp < lastTimestamp) {
+                //时钟回拨，按策略处理
+                timestamp = clockBackwards(lastTimestamp + twepoch, timestamp + twepoch) - twepoch;
+            }
+
+            long next;
+            if (timestamp == lastTimestamp) {
+                if ((current & laneSequenceMask) != laneSequenceMask) {
+                    next = current + 1;
+                } else {
+                    //当前毫秒内，序列号已用完，取下一毫秒
+                    timestamp = nextMillis(lastTimestamp + twepoch) - twepoch;
+                    next = (timestamp << laneSequenceBits) | (initialSequence() & laneSequenceMask);
+                }
+            } else {
+                next = (timestamp << laneSequenceBits) | (initialSequence() & laneSequenceMask);
+            }
+
+            if (lanes.compareAndSet(index, current, next)) {
+                return toId(lane, next);
+            }
+        }
+    }
+
+    /**
+     * 批量获取全局自增唯一ID
+     * 每次CAS预留本通道当前毫秒内尽可能多的连续序列号，可跨越多个毫秒
+     *
+     * @param dst    存放ID的数组
+     * @param offset 起始下标
+     * @param length 获取数量
+     */
+    @Override
+    public void nextIds(long[] dst, int offset, int length) {
+        checkRange(dst, offset, length);
+        int lane = currentLane();
+        int index = lane * PADDING;
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            long current = lanes.get(index);
+            long lastTimestamp = current >>> laneSequenceBits;
+            long timestamp = timeGen() - twepoch;
+
+            if (timestamp < lastTimestamp) {
+                //时钟回拨，按策略处理
+                timestamp = clockBackwards(lastTimestamp + twepoch, timestamp + twepoch) - twepoch;
+            }
+
+            //预留区间[first, last]，均为打包状态
+            long first;
+            long last;
+            if (timestamp == lastTimestamp && (current & laneSequenceMask) != laneSequenceMask) {
+                first = current + 1;
+                last = current + Math.min(end - i, laneSequenceMask - (current & laneSequenceMask));
+            } else {
+                if (timestamp == lastTimestamp) {
+                    //当前毫秒内，序列号已用完，取下一毫秒
+                    timestamp = nextMillis(lastTimestamp + twepoch) - twepoch;
+                }
+                first = (timestamp << laneSequenceBits) | (initialSequence() & laneSequenceMask);
+                last = first + Math.min(end - i - 1, laneSequenceMask - (first & laneSequenceMask));
+            }
+
+            if (lanes.compareAndSet(index, current, last)) {
+                for (long packed = first; packed <= last; packed++) {
+                    dst[i++] = toId(lane, packed);
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前线程使用的通道号
+     *
+     * @return
+     */
+    protected int currentLane() {
+        return threadLane.get();
+    }
+
+    /**
+     * 打包状态进行bit拼接
+     *
+     * @param lane
+     * @param packed
+     * @return
+     */
+    private long toId(int lane, long packed) {
+        return ((packed >>> laneSequenceBits) << timestampLeftShift) | nodeBits
+                | ((long) lane << laneSequenceBits) | (packed & laneSequenceMask);
+    }
+
+    @Override
+    protected boolean supportsClockSequence() {
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+package com.newbieandy.commons;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Description: ID生成器使用的毫秒时钟
+ * 实现类需保证线程安全
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public interface TimeSource {
+
+    /**
+     * 系统时钟，每次调用System.currentTimeMillis()
+     */
+    TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * 获取当前时间(毫秒)
+     *
+     * @return
+     */
+    long currentTimeMillis();
+
+    /**
+     * 后台线程定时刷新的缓存时钟
+     * 读取时间只是一次volatile读，不调用系统时钟；时间最多落后一个刷新周期，且不会倒退
+     * 不再使用时需调用{@link #close()}停止后台线程
+     */
+    class Cached implements TimeSource, Closeable {
+        private final long tickNanos;
+        private final Thread ticker;
+        private volatile long now;
+        private volatile boolean running = true;
+
+        /**
+         * 每毫秒刷新一次
+         */
+        public Cached() {
+            this(1, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @param tick 刷新周期
+         * @param unit 刷新周期单位
+         */
+        public Cached(long tick, TimeUnit unit) {
+            if (tick <= 0) {
+                throw new IllegalArgumentException(String.format("刷新周期必须大于0: %d", tick));
+            }
+            this.tickNanos = unit.toNanos(tick);
+            this.now = System.currentTimeMillis();
+            this.ticker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running) {
+                        long current = System.currentTimeMillis();
+                        //系统时钟回拨时保持原值，等待系统时钟追上
+                        if (current > now) {
+                            now = current;
+                        }
+                        LockSupport.parkNanos(tickNanos);
+                    }
+                }
+            }, "idworker-cached-clock");
+            this.ticker.setDaemon(true);
+            this.ticker.start();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+
+        /**
+         * 停止后台刷新线程
+         */
+        @Override
+        public void close() {
+            running = false;
+            LockSupport.unpark(ticker);
+        }
+    }
+
+    /**
+     * 以System.nanoTime()为基准的单调时钟
+     * 创建时锚定系统时间，之后按nanoTime推进，不受NTP调整或手工改时间影响，永不倒退；
+     * 代价是长期运行后可能与系统时间存在漂移
+     */
+    class Monotonic implements TimeSource {
+        private final long anchorMillis;
+        private final long anchorNanos;
+
+        public Monotonic() {
+            this.anchorMillis = System.currentTimeMillis();
+            this.anchorNanos = System.nanoTime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return anchorMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - anchorNanos);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.newbieandy.commons;
+
+/**
+ * @Description: 工作机器ID分配器
+ * 为新启动的ID生成器分配一个未被占用的处理中心ID+工作机器ID，并以租约形式持有
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public interface WorkerIdAllocator {
+
+    /**
+     * 读取环境变量 IDWORKER_CONFIG（格式 处理中心ID_工作机器ID），租约永不过期
+     */
+    WorkerIdAllocator ENVIRONMENT = new WorkerIdAllocator() {
+        @Override
+        public WorkerIdLease acquire(IdLayout layout) {
+            //获取环境变量
+            String idworkerConfig = System.getenv("IDWORKER_CONFIG");
+            //判断环境变量是否合法
+            if (null == idworkerConfig || !IdWorker.isValidConfig(idworkerConfig)) {
+                throw new RuntimeException("IDWORKER_CONFIG环境变量配置错误！");
+            }
+            String[] configArgs = idworkerConfig.split("_");
+            return fixed(IdWorker.parseConfigLong(configArgs[0]), IdWorker.parseConfigLong(configArgs[1]));
+        }
+    };
+
+    /**
+     * 按位布局申请工作机器ID
+     *
+     * @param layout 位布局，决定处理中心ID与工作机器ID的取值范围
+     * @return 租约
+     * @throws IllegalStateException 没有空闲的工作机器ID
+     */
+    WorkerIdLease acquire(IdLayout layout);
+
+    /**
+     * 固定的、永不过期的租约
+     *
+     * @param datacenterId 处理中心ID
+     * @param workerId     工作机器ID
+     * @return
+     */
+    static WorkerIdLease fixed(final long datacenterId, final long workerId) {
+        return new WorkerIdLease() {
+            @Override
+            public long getDatacenterId() {
+                return datacenterId;
+            }
+
+            @Override
+            public long getWorkerId() {
+                return workerId;
+            }
+
+            @Override
+            public boolean isValid(long now) {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.newbieandy.commons;
+
+import java.io.Closeable;
+
+/**
+ * @Description: 工作机器ID租约
+ * 持有期间该处理中心ID+工作机器ID只分配给当前进程；租约失效后使用它的IdWorker拒绝生成ID，避免与新的持有者重复
+ * @Author: machao
+ * @Version:1.0.0
+ */
+public interface WorkerIdLease extends Closeable {
+
+    /**
+     * 处理中心ID
+     */
+    long getDatacenterId();
+
+    /**
+     * 工作机器ID
+     */
+    long getWorkerId();
+
+    /**
+     * 指定时间租约是否有效
+     *
+     * @param now 当前时间(毫秒)
+     * @return
+     */
+    boolean isValid(long now);
+
+    /**
+     * 最近一次续约失败或租约失效的原因，用于说明租约为什么失效
+     *
+     * @return 没有时返回null
+     */
+    default Exception getFailure() {
+        return null;
+    }
+
+    /**
+     * 释放租约，释放后不再有效
+     *
+     * @throws java.io.UncheckedIOException 释放失败
+     */
+    @Override
+    void close();
+}
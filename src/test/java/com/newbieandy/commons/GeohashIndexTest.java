@@ -0,0 +1,193 @@
+package com.newbieandy.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class GeohashIndexTest {
+
+    private static final double LAT = 39.90872;
+    private static final double LON = 116.39748;
+
+    @Test
+    public void testUpdateAndQuery() {
+        //增量段很小，频繁合并
+        GeohashIndex index = new GeohashIndex(8);
+        Map<Long, double[]> points = new HashMap<>();
+        Random random = new Random(7);
+        for (int round = 0; round < 3000; round++) {
+            long id = random.nextInt(500);
+            double lat = LAT + (random.nextDouble() - 0.5) * 0.2;
+            double lon = LON + (random.nextDouble() - 0.5) * 0.2;
+            int op = random.nextInt(10);
+            if (op < 5) {
+                if (points.containsKey(id)) {
+                    try {
+                        index.insert(id, lat, lon);
+                        Assert.fail();
+                    } catch (IllegalArgumentException e) {
+                        //ID已存在
+                    }
+                } else {
+                    index.insert(id, lat, lon);
+                    points.put(id, new double[]{lat, lon});
+                }
+            } else if (op < 8) {
+                Assert.assertEquals(points.containsKey(id), index.move(id, lat, lon));
+                if (points.containsKey(id)) {
+                    points.put(id, new double[]{lat, lon});
+                }
+            } else {
+                Assert.assertEquals(null != points.remove(id), index.remove(id));
+            }
+            Assert.assertEquals(points.size(), index.size());
+
+            if (round % 100 == 0) {
+                double qLat = LAT + (random.nextDouble() - 0.5) * 0.1;
+                double qLon = LON + (random.nextDouble() - 0.5) * 0.1;
+                assertRadius(index, points, qLat, qLon, 3000);
+                assertNearest(index, points, qLat, qLon, 10);
+            }
+        }
+        assertNearest(index, points, LAT, LON, points.size() + 5);
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final GeohashIndex index = new GeohashIndex(64);
+        for (int i = 0; i < 2000; i++) {
+            index.insert(i, LAT + (i % 50) * 0.001, LON + (i / 50) * 0.001);
+        }
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 300; i++) {
+                            //所有点都在移动，但总数不变
+                            Assert.assertEquals(5, index.nearest(LAT, LON, 5).length);
+                            index.radius(LAT, LON, 500);
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        Random random = new Random(1);
+        for (int round = 0; round < 20000; round++) {
+            int id = random.nextInt(2000);
+            index.move(id, LAT + random.nextDouble() * 0.05, LON + random.nextDouble() * 0.05);
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertNull(error.get());
+        Assert.assertEquals(2000, index.size());
+    }
+
+    @Test
+    public void testConcurrentWritersDuringMerge() throws Exception {
+        //增量段很小，一个线程在锁外归并时其他线程的删除和原地修改需要重放到新主段
+        final GeohashIndex index = new GeohashIndex(16);
+        final List<Map<Long, double[]>> models = new ArrayList<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            final int writer = t;
+            final Map<Long, double[]> points = new HashMap<>();
+            models.add(points);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(writer);
+                        for (int round = 0; round < 20000; round++) {
+                            //各线程使用互不相交的ID
+                            long id = writer * 1000L + random.nextInt(300);
+                            double[] point = points.get(id);
+                            int op = random.nextInt(10);
+                            if (null == point) {
+                                double lat = LAT + (random.nextDouble() - 0.5) * 0.2;
+                                double lon = LON + (random.nextDouble() - 0.5) * 0.2;
+                                index.insert(id, lat, lon);
+                                points.put(id, new double[]{lat, lon});
+                            } else if (op < 4) {
+                                //微小移动，通常仍在同一个单元内，原地修改
+                                double lat = point[0] + 1e-9;
+                                double lon = point[1] + 1e-9;
+                                Assert.assertTrue(index.move(id, lat, lon));
+                                points.put(id, new double[]{lat, lon});
+                            } else if (op < 8) {
+                                double lat = LAT + (random.nextDouble() - 0.5) * 0.2;
+                                double lon = LON + (random.nextDouble() - 0.5) * 0.2;
+                                Assert.assertTrue(index.move(id, lat, lon));
+                                points.put(id, new double[]{lat, lon});
+                            } else {
+                                Assert.assertTrue(index.remove(id));
+                                points.remove(id);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(error.get());
+        Map<Long, double[]> points = new HashMap<>();
+        for (Map<Long, double[]> model : models) {
+            points.putAll(model);
+        }
+        Assert.assertEquals(points.size(), index.size());
+        assertRadius(index, points, LAT, LON, 20000);
+        assertNearest(index, points, LAT, LON, points.size());
+    }
+
+    private static void assertRadius(GeohashIndex index, Map<Long, double[]> points, double lat, double lon, double radius) {
+        List<Long> expected = new ArrayList<>();
+        for (Map.Entry<Long, double[]> entry : points.entrySet()) {
+            if (GeohashUtil.distance(lat, lon, entry.getValue()[0], entry.getValue()[1]) <= radius) {
+                expected.add(entry.getKey());
+            }
+        }
+        long[] actual = index.radius(lat, lon, radius);
+        Arrays.sort(actual);
+        Assert.assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), actual);
+    }
+
+    private static void assertNearest(GeohashIndex index, Map<Long, double[]> points, double lat, double lon, int k) {
+        double[] all = new double[points.size()];
+        int n = 0;
+        for (double[] point : points.values()) {
+            all[n++] = GeohashUtil.distance(lat, lon, point[0], point[1]);
+        }
+        Arrays.sort(all);
+        long[] ids = new long[k];
+        double[] distances = new double[k];
+        int count = index.nearest(lat, lon, k, ids, distances);
+        Assert.assertEquals(Math.min(k, points.size()), count);
+        for (int i = 0; i < count; i++) {
+            double[] point = points.get(ids[i]);
+            Assert.assertEquals(distances[i], GeohashUtil.distance(lat, lon, point[0], point[1]), 0);
+            //距离与暴力计算的第i近一致
+            Assert.assertEquals(all[i], distances[i], 0);
+        }
+    }
+}
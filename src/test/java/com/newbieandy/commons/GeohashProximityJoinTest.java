@@ -0,0 +1,75 @@
+package com.newbieandy.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class GeohashProximityJoinTest {
+
+    @Test
+    public void testJoin() {
+        final Set<String> actual = new HashSet<>();
+        GeohashProximityJoin join = new GeohashProximityJoin(300, 10000, new GeohashProximityJoin.Listener() {
+            @Override
+            public void onMatch(long leftId, long rightId, double distance) {
+                Assert.assertTrue(distance <= 300);
+                Assert.assertTrue(actual.add(leftId + "-" + rightId));
+            }
+        });
+        //乘客(左)与司机(右)，事件按时间到达
+        Random random = new Random(11);
+        List<double[]> lefts = new ArrayList<>();
+        List<double[]> rights = new ArrayList<>();
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 4000; i++) {
+            long time = i * 50L;
+            double lat = 39.9 + random.nextDouble() * 0.05;
+            double lon = 116.4 + random.nextDouble() * 0.05;
+            boolean isLeft = random.nextBoolean();
+            double[] event = {i, lat, lon, time};
+            for (double[] other : isLeft ? rights : lefts) {
+                if (time - other[3] <= 10000 && GeohashUtil.distance(lat, lon, other[1], other[2]) <= 300) {
+                    expected.add(isLeft ? i + "-" + (long) other[0] : (long) other[0] + "-" + i);
+                }
+            }
+            if (isLeft) {
+                lefts.add(event);
+                join.left(i, lat, lon, time);
+            } else {
+                rights.add(event);
+                join.right(i, lat, lon, time);
+            }
+        }
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+        //只保留约一个窗口内的事件
+        Assert.assertTrue(join.getStateSize() <= 10000 / 50 * 5 / 4 + 1);
+    }
+
+    @Test
+    public void testLateAndPolar() {
+        final int[] count = {0};
+        GeohashProximityJoin join = new GeohashProximityJoin(1000, 1000, 500, new GeohashProximityJoin.Listener() {
+            @Override
+            public void onMatch(long leftId, long rightId, double distance) {
+                count[0]++;
+            }
+        });
+        //靠近北极，经度相差很大但距离很近
+        join.left(1, 89.999, 0, 10000);
+        Assert.assertEquals(1, join.right(2, 89.999, 170, 10200));
+        //迟到不超过500毫秒仍然匹配
+        Assert.assertEquals(1, join.right(3, 89.999, -90, 9800));
+        //迟到超过500毫秒被丢弃
+        Assert.assertEquals(-1, join.right(4, 89.999, 0, 9000));
+        Assert.assertEquals(1, join.getLateCount());
+        //超出时间窗口
+        Assert.assertEquals(0, join.right(5, 89.999, 0, 11500));
+        Assert.assertEquals(2, count[0]);
+    }
+}
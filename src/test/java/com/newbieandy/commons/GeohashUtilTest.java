@@ -0,0 +1,276 @@
+package com.newbieandy.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Created by machao on 2016/9/20.
+ */
+public class GeohashUtilTest {
+
+    @Test
+    public void testEncode() {
+        Assert.assertEquals("wx4g09nj1uee", GeohashUtil.encode(39.90872, 116.39748));
+        Assert.assertEquals("zzzzzzzzzzzz", GeohashUtil.encode(90, 180));
+        //高位为0的编码保持12位
+        Assert.assertEquals("000000000000", GeohashUtil.encode(-90, -180));
+
+        char[] chars = new char[14];
+        GeohashUtil.encode(39.90872, 116.39748, chars, 1);
+        Assert.assertEquals("wx4g09nj1uee", new String(chars, 1, 12));
+        byte[] bytes = new byte[12];
+        GeohashUtil.encode(39.90872, 116.39748, bytes, 0);
+        Assert.assertEquals("wx4g09nj1uee", new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testLongGeohash() {
+        String geohash = GeohashUtil.encode(39.90872, 116.39748);
+        for (int length = 1; length <= 12; length++) {
+            long packed = GeohashUtil.encodeLong(39.90872, 116.39748, length * 5);
+            Assert.assertEquals(packed, GeohashUtil.toLong(geohash.substring(0, length)));
+            Assert.assertEquals(geohash.substring(0, length), GeohashUtil.toString(packed));
+            Assert.assertEquals(length * 5, GeohashUtil.bitsOf(packed));
+            Assert.assertTrue(packed > 0);
+        }
+
+        long cell = GeohashUtil.toLong("wx4g0");
+        double[] bounds = new double[4];
+        GeohashUtil.bounds(cell, bounds);
+        double[] center = new double[2];
+        GeohashUtil.decode(cell, center);
+        Assert.assertTrue(center[0] > bounds[0] && center[0] < bounds[2]);
+        Assert.assertTrue(center[1] > bounds[1] && center[1] < bounds[3]);
+
+        //九宫格与字符串版本一致
+        long[] neighbors = new long[9];
+        GeohashUtil.neighbors(cell, neighbors);
+        String[] expand = GeohashUtil.getGeoHashExpand("wx4g0");
+        for (int i = 0; i < 9; i++) {
+            Assert.assertEquals(expand[i], GeohashUtil.toString(neighbors[i]));
+        }
+        //经度方向首尾相接
+        Assert.assertEquals("b", GeohashUtil.toString(GeohashUtil.neighbor(GeohashUtil.toLong("z"), 0, 1)));
+
+        //父子关系与排序
+        long child = GeohashUtil.child(cell, 5, 31);
+        Assert.assertEquals("wx4g0z", GeohashUtil.toString(child));
+        Assert.assertEquals(cell, GeohashUtil.parent(child, 25));
+        Assert.assertTrue(GeohashUtil.contains(cell, child));
+        Assert.assertFalse(GeohashUtil.contains(child, cell));
+        Assert.assertTrue(GeohashUtil.compare(GeohashUtil.toLong("wx4g0"), GeohashUtil.toLong("wx4g1")) < 0);
+    }
+
+    @Test
+    public void testGeoHashExpand() {
+        Assert.assertArrayEquals(new String[]{"wx4g0", "wx4g2", "wx4fb", "wx4g1", "wx4ep", "wx4er", "wx4g3", "wx4fc", "wx4dz"},
+                GeohashUtil.getGeoHashExpand("wx4g0"));
+        Assert.assertArrayEquals(new String[]{"s0", "s1", "kp", "s2", "eb", "ec", "s3", "kr", "7z"},
+                GeohashUtil.getGeoHashExpand("s0"));
+        String[] out = new String[9];
+        GeohashUtil.getGeoHashExpand("wx4g09nj1uee", out);
+        Assert.assertArrayEquals(new String[]{"wx4g09nj1uee", "wx4g09nj1ues", "wx4g09nj1ued", "wx4g09nj1ueg",
+                "wx4g09nj1ue7", "wx4g09nj1uek", "wx4g09nj1ueu", "wx4g09nj1uef", "wx4g09nj1ue6"}, out);
+        //北极不再向上移动
+        Assert.assertEquals("z", GeohashUtil.getGeoHashExpand("z")[1]);
+
+        try {
+            GeohashUtil.getGeoHashExpand("wx4ga");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //'a'不是base32字符
+        }
+        try {
+            GeohashUtil.getGeoHashExpand("", out);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //空字符串
+        }
+    }
+
+    @Test
+    public void testCover() {
+        double lat = 39.90872;
+        double lon = 116.39748;
+        long[] cells = GeohashUtil.coverCircle(lat, lon, 2000, 40, 64);
+        Assert.assertTrue(cells.length <= 64);
+        for (int i = 1; i < cells.length; i++) {
+            Assert.assertTrue(GeohashUtil.rangeMax(cells[i - 1]) < GeohashUtil.rangeMin(cells[i]));
+        }
+        long[] ranges = GeohashUtil.coverRanges(cells);
+        Assert.assertTrue(ranges.length <= cells.length * 2);
+
+        //圆内的点都被覆盖，远处的点不被覆盖
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            double pLat = lat + (random.nextDouble() - 0.5) * 0.1;
+            double pLon = lon + (random.nextDouble() - 0.5) * 0.1;
+            long point = GeohashUtil.encodeLong(pLat, pLon, GeohashUtil.MAX_BITS);
+            double distance = GeohashUtil.GetDistance(lon, lat, pLon, pLat);
+            if (distance <= 2000) {
+                Assert.assertTrue(inRanges(ranges, point));
+            } else if (distance > 4000) {
+                Assert.assertFalse(inRanges(ranges, point));
+            }
+        }
+
+        //跨越180度经线的矩形
+        long[] box = GeohashUtil.coverBox(-10, 170, 10, -170, 30, 128);
+        long[] boxRanges = GeohashUtil.coverRanges(box);
+        Assert.assertTrue(inRanges(boxRanges, GeohashUtil.encodeLong(5, 179.9, GeohashUtil.MAX_BITS)));
+        Assert.assertTrue(inRanges(boxRanges, GeohashUtil.encodeLong(-5, -175, GeohashUtil.MAX_BITS)));
+        Assert.assertFalse(inRanges(boxRanges, GeohashUtil.encodeLong(0, 0, GeohashUtil.MAX_BITS)));
+        Assert.assertFalse(inRanges(boxRanges, GeohashUtil.encodeLong(20, 175, GeohashUtil.MAX_BITS)));
+    }
+
+    private static boolean inRanges(long[] ranges, long geohash) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (geohash >= ranges[i] && geohash <= ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testDistance() {
+        //天安门到故宫北门约1公里，结果保留小数而不是截断到整米
+        double distance = GeohashUtil.GetDistance(116.39748, 39.90872, 116.39749, 39.91828);
+        Assert.assertEquals(GeohashUtil.distance(39.90872, 116.39748, 39.91828, 116.39749), distance, 1e-4);
+        Assert.assertNotEquals(Math.floor(distance), distance, 0);
+
+        Random random = new Random(3);
+        double[] lats = new double[1000];
+        double[] lons = new double[1000];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = 39.90872 + (random.nextDouble() - 0.5) * 0.1;
+            lons[i] = 116.39748 + (random.nextDouble() - 0.5) * 0.1;
+        }
+        double[] exact = new double[1000];
+        GeohashUtil.distances(39.90872, 116.39748, lats, lons, exact);
+        double[] approximate = new double[10];
+        GeohashUtil.approximateDistances(39.90872, 116.39748, lats, lons, 990, 10, approximate);
+        for (int i = 0; i < lats.length; i++) {
+            Assert.assertEquals(GeohashUtil.distance(39.90872, 116.39748, lats[i], lons[i]), exact[i], 0);
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(exact[990 + i], approximate[i], exact[990 + i] * 0.001);
+        }
+        //跨越180度经线
+        GeohashUtil.approximateDistances(0, 179.99, new double[]{0}, new double[]{-179.99}, 0, 1, approximate);
+        Assert.assertEquals(GeohashUtil.distance(0, 179.99, 0, -179.99), approximate[0], 1);
+    }
+
+    @Test
+    public void testBulk() {
+        int n = 50000;
+        Random random = new Random(5);
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = random.nextDouble() * 180 - 90;
+            lons[i] = random.nextDouble() * 360 - 180;
+        }
+        long[] hashes = new long[n];
+        GeohashUtil.encodeLong(lats, lons, 40, hashes);
+        long[] parallel = new long[n];
+        GeohashUtil.parallelEncodeLong(lats, lons, 40, parallel);
+        Assert.assertArrayEquals(hashes, parallel);
+
+        //直接缓冲区与数组结果一致
+        DoubleBuffer latBuffer = ByteBuffer.allocateDirect(n * 8).asDoubleBuffer().put(lats);
+        DoubleBuffer lonBuffer = ByteBuffer.allocateDirect(n * 8).asDoubleBuffer().put(lons);
+        latBuffer.flip();
+        lonBuffer.flip();
+        LongBuffer hashBuffer = LongBuffer.allocate(n);
+        GeohashUtil.parallelEncodeLong(latBuffer, lonBuffer, 40, hashBuffer);
+        Assert.assertArrayEquals(hashes, hashBuffer.array());
+        Assert.assertEquals(0, latBuffer.position());
+
+        byte[] chars = new byte[n * 12];
+        GeohashUtil.parallelEncode(lats, lons, chars);
+        double[] centerLats = new double[n];
+        double[] centerLons = new double[n];
+        GeohashUtil.parallelDecode(hashes, centerLats, centerLons);
+        DoubleBuffer directLats = ByteBuffer.allocateDirect(n * 8).asDoubleBuffer();
+        DoubleBuffer directLons = ByteBuffer.allocateDirect(n * 8).asDoubleBuffer();
+        GeohashUtil.decode(LongBuffer.wrap(hashes), directLats, directLons);
+        double[] center = new double[2];
+        for (int i = 0; i < n; i += 97) {
+            Assert.assertEquals(GeohashUtil.encode(lats[i], lons[i]), new String(chars, 12 * i, 12, StandardCharsets.US_ASCII));
+            Assert.assertEquals(GeohashUtil.encodeLong(lats[i], lons[i], 40), hashes[i]);
+            GeohashUtil.decode(hashes[i], center);
+            Assert.assertEquals(center[0], centerLats[i], 0);
+            Assert.assertEquals(center[1], centerLons[i], 0);
+            Assert.assertEquals(center[0], directLats.get(i), 0);
+            Assert.assertEquals(center[1], directLons.get(i), 0);
+        }
+
+        try {
+            GeohashUtil.encodeLong(lats, new double[n - 1], 40, hashes);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //经度列长度不足
+        }
+    }
+
+    @Test
+    public void testPrecision() {
+        String full = GeohashUtil.encode(39.90872, 116.39748);
+        double[] out = new double[4];
+        for (int length = 1; length <= 12; length++) {
+            Assert.assertEquals(full.substring(0, length), GeohashUtil.encode(39.90872, 116.39748, length));
+            long bits = GeohashUtil.encodeBits(39.90872, 116.39748, length * 5);
+            Assert.assertEquals(GeohashUtil.encodeBits(39.90872, 116.39748) >>> (60 - length * 5), bits);
+            GeohashUtil.decodeBits(bits, length * 5, out);
+            Assert.assertTrue(Math.abs(out[0] - 39.90872) <= out[2]);
+            Assert.assertTrue(Math.abs(out[1] - 116.39748) <= out[3]);
+        }
+        //任意位数
+        Assert.assertEquals(GeohashUtil.encodeBits(39.90872, 116.39748) >>> 47, GeohashUtil.encodeBits(39.90872, 116.39748, 13));
+
+        char[] chars = new char[8];
+        GeohashUtil.encode(39.90872, 116.39748, 6, chars, 2);
+        Assert.assertEquals("wx4g09", new String(chars, 2, 6));
+        byte[] bytes = new byte[6];
+        GeohashUtil.encode(39.90872, 116.39748, 6, bytes, 0);
+        Assert.assertEquals("wx4g09", new String(bytes, StandardCharsets.US_ASCII));
+        Assert.assertArrayEquals(GeohashUtil.getGeoHashExpand("wx4g0"), GeohashUtil.getGeoHashExpand(39.90872, 116.39748, 5));
+
+        try {
+            GeohashUtil.encode(39.90872, 116.39748, 13);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //最多12个字符
+        }
+    }
+
+    @Test
+    public void testDecode() {
+        double[] latLon = GeohashUtil.decode("wx4g09nj1uee");
+        Assert.assertEquals(39.90872, latLon[0], 1e-6);
+        Assert.assertEquals(116.39748, latLon[1], 1e-6);
+
+        double[] out = new double[4];
+        GeohashUtil.decode("wx4g0", out);
+        //5个字符：纬度12位、经度13位
+        Assert.assertEquals(90.0 / 4096, out[2], 1e-12);
+        Assert.assertEquals(180.0 / 8192, out[3], 1e-12);
+        Assert.assertTrue(Math.abs(out[0] - 39.90872) <= out[2]);
+        Assert.assertTrue(Math.abs(out[1] - 116.39748) <= out[3]);
+        Assert.assertEquals("wx4g0", GeohashUtil.encode(out[0], out[1]).substring(0, 5));
+
+        try {
+            GeohashUtil.decode("wx4ga", out);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //'a'不是base32字符
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.newbieandy.commons;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 使用JDK自带的HttpServer在本机模拟上游服务
+ */
+public class HttpClientUtilTest {
+
+    //下载用的文件内容
+    private static final byte[] FILE = new byte[300000];
+
+    static {
+        for (int i = 0; i < FILE.length; i++) {
+            FILE[i] = (byte) (i * 31 + i / 7);
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String baseUrl;
+    //服务端看到的客户端端口，同一端口说明复用了同一个连接
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    //服务端同时处理中的请求数及其最大值
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    //下载请求带的Range头
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                String query = exchange.getRequestURI().getRawQuery();
+                respond(exchange, 200, (exchange.getRequestMethod() + " " + query).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int current = active.incrementAndGet();
+                while (true) {
+                    int max = maxActive.get();
+                    if (current <= max || maxActive.compareAndSet(max, current)) {
+                        break;
+                    }
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+                respond(exchange, 200, exchange.getRequestURI().getRawQuery().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        //返回n行"line-i"，chunked=1时不带Content-Length分块传输
+        server.createContext("/lines", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Map<String, String> query = new HashMap<>();
+                for (String pair : exchange.getRequestURI().getRawQuery().split("&")) {
+                    query.put(pair.substring(0, pair.indexOf('=')), pair.substring(pair.indexOf('=') + 1));
+                }
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0, n = Integer.parseInt(query.get("n")); i < n; i++) {
+                    sb.append("line-").append(i).append('\n');
+                }
+                byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+                if ("1".equals(query.get("chunked"))) {
+                    exchange.sendResponseHeaders(200, 0);
+                    OutputStream output = exchange.getResponseBody();
+                    try {
+                        for (int offset = 0; offset < body.length; offset += 1000) {
+                            output.write(body, offset, Math.min(1000, body.length - offset));
+                        }
+                        output.close();
+                    } catch (IOException e) {
+                        //客户端超过上限后提前断开
+                    }
+                } else {
+                    respond(exchange, 200, body);
+                }
+            }
+        });
+        //支持 Range: bytes=N- 的文件下载，/missing返回404
+        server.createContext("/file", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                ranges.add(String.valueOf(range));
+                if (null == range) {
+                    respond(exchange, 200, FILE);
+                    return;
+                }
+                int offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                if (offset >= FILE.length) {
+                    respond(exchange, 416, new byte[0]);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + offset + "-" + (FILE.length - 1) + "/" + FILE.length);
+                respond(exchange, 206, Arrays.copyOfRange(FILE, offset, FILE.length));
+            }
+        });
+        server.createContext("/sleep", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getRawQuery();
+                try {
+                    Thread.sleep(Long.parseLong(query.substring("ms=".length())));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    respond(exchange, 200, query.getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    //客户端超时后已断开
+                }
+            }
+        });
+        server.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 404, new byte[0]);
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        HttpClientUtil.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        OutputStream output = exchange.getResponseBody();
+        output.write(body);
+        output.close();
+    }
+
+    @Test
+    public void testPooledConnectionReuse() {
+        HttpClientUtil.configure(HttpClientConfig.builder().maxTotal(10).maxPerRoute(2).build());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("GET a=" + i, HttpClientUtil.get(baseUrl + "/echo", Collections.singletonMap("a", String.valueOf(i))));
+        }
+        Assert.assertEquals("POST null", HttpClientUtil.post(baseUrl + "/echo", Collections.singletonMap("b", "1")));
+        //顺序请求始终复用同一个连接
+        Assert.assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        HttpClientUtil.configure(HttpClientConfig.builder().maxPerRoute(4).ioThreads(1).build());
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(HttpClientUtil.getAsync(baseUrl + "/slow", Collections.singletonMap("i", String.valueOf(i)), null));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals("i=" + i, futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+        //请求并发执行，但同一主机的并发连接数不超过maxPerRoute
+        Assert.assertTrue(maxActive.get() > 1 && maxActive.get() <= 4);
+        Assert.assertEquals("POST null", HttpClientUtil.postAsync(baseUrl + "/echo", Collections.singletonMap("b", "1")).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAsyncFailure() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        try {
+            HttpClientUtil.getAsync("http://127.0.0.1:" + port + "/echo").get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testAsyncCancelReleasesConnection() throws Exception {
+        //只有一个连接：取消的请求必须关闭它，后面的请求才能拿到连接
+        HttpClientUtil.configure(HttpClientConfig.builder().maxPerRoute(1).build());
+        CompletableFuture<String> slow = HttpClientUtil.getAsync(baseUrl + "/sleep?ms=3000");
+        Thread.sleep(300);
+        Assert.assertTrue(slow.cancel(true));
+        Assert.assertEquals("ms=0", HttpClientUtil.getAsync(baseUrl + "/sleep?ms=0").get(1, TimeUnit.SECONDS));
+        //尚未拿到连接时取消
+        slow = HttpClientUtil.getAsync(baseUrl + "/sleep?ms=3000");
+        CompletableFuture<String> queued = HttpClientUtil.getAsync(baseUrl + "/sleep?ms=3000");
+        queued.cancel(true);
+        Thread.sleep(300);
+        slow.cancel(true);
+        Assert.assertEquals("ms=0", HttpClientUtil.getAsync(baseUrl + "/sleep?ms=0").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAsyncDuringShutdown() throws Exception {
+        //与configure()并发时可能用到刚关闭的连接池，失败通过返回的CompletableFuture报告而不是直接抛出
+        final List<CompletableFuture<String>> futures = Collections.synchronizedList(new ArrayList<CompletableFuture<String>>());
+        final AtomicInteger thrown = new AtomicInteger();
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!stop.get()) {
+                    try {
+                        futures.add(HttpClientUtil.getAsync(baseUrl + "/echo"));
+                    } catch (RuntimeException e) {
+                        thrown.incrementAndGet();
+                    }
+                }
+            }
+        });
+        caller.start();
+        for (int i = 0; i < 50; i++) {
+            HttpClientUtil.configure(HttpClientConfig.builder().ioThreads(1).build());
+            Thread.sleep(2);
+        }
+        stop.set(true);
+        caller.join();
+        Assert.assertEquals(0, thrown.get());
+        Assert.assertFalse(futures.isEmpty());
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        //10000行共98890字节
+        for (String chunked : new String[]{"0", "1"}) {
+            Map<String, String> params = new HashMap<>();
+            params.put("n", "10000");
+            params.put("chunked", chunked);
+            int count = HttpClientUtil.getStream(baseUrl + "/lines", params, null, HttpClientUtil.UNLIMITED,
+                    HttpClientUtil.lines("UTF-8", new HttpClientUtil.LineHandler<Integer>() {
+                        @Override
+                        public Integer handle(Iterator<String> lines) {
+                            int i = 0;
+                            while (lines.hasNext()) {
+                                Assert.assertEquals("line-" + i, lines.next());
+                                i++;
+                            }
+                            return i;
+                        }
+                    }));
+            Assert.assertEquals(10000, count);
+
+            final long[] received = new long[1];
+            long total = HttpClientUtil.getStream(baseUrl + "/lines", params, null, 98890,
+                    HttpClientUtil.chunks(4096, new HttpClientUtil.ChunkConsumer() {
+                        @Override
+                        public void accept(ByteBuffer chunk) {
+                            Assert.assertTrue(chunk.remaining() <= 4096);
+                            received[0] += chunk.remaining();
+                        }
+                    }));
+            Assert.assertEquals(98890, total);
+            Assert.assertEquals(98890, received[0]);
+
+            try {
+                HttpClientUtil.getStream(baseUrl + "/lines", params, null, 98889, HttpClientUtil.chunks(4096, new HttpClientUtil.ChunkConsumer() {
+                    @Override
+                    public void accept(ByteBuffer chunk) {
+                    }
+                }));
+                Assert.fail();
+            } catch (IOException e) {
+                //超过上限
+            }
+        }
+        //超过上限后连接被丢弃，之后的请求不受影响
+        Assert.assertEquals("GET a=1", HttpClientUtil.get(baseUrl + "/echo", Collections.singletonMap("a", "1")));
+    }
+
+    @Test
+    public void testDownload() throws IOException {
+        File target = new File(folder.getRoot(), "a/b/file.bin");
+        Assert.assertEquals(FILE.length, HttpClientUtil.download(baseUrl + "/file", target));
+        Assert.assertArrayEquals(FILE, Files.readAllBytes(target.toPath()));
+        Assert.assertFalse(new File(target.getPath() + ".part").exists());
+
+        //上次中断留下前一部分，续传剩余部分
+        File resumed = new File(folder.getRoot(), "resumed.bin");
+        Files.write(new File(resumed.getPath() + ".part").toPath(), Arrays.copyOf(FILE, 123456));
+        Assert.assertEquals(FILE.length, HttpClientUtil.download(baseUrl + "/file", resumed));
+        Assert.assertArrayEquals(FILE, Files.readAllBytes(resumed.toPath()));
+
+        //临时文件比服务端文件还大时从头下载
+        File stale = new File(folder.getRoot(), "stale.bin");
+        Files.write(new File(stale.getPath() + ".part").toPath(), new byte[FILE.length + 10]);
+        Assert.assertEquals(FILE.length, HttpClientUtil.download(baseUrl + "/file", stale));
+        Assert.assertArrayEquals(FILE, Files.readAllBytes(stale.toPath()));
+        Assert.assertEquals(Arrays.asList("null", "bytes=123456-", "bytes=300010-", "null"), ranges);
+
+        //失败时不产生目标文件
+        File missing = new File(folder.getRoot(), "missing.bin");
+        try {
+            HttpClientUtil.download(baseUrl + "/missing", missing);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertFalse(missing.exists());
+        }
+    }
+
+    @Test
+    public void testBatchDownload() throws Exception {
+        Map<String, File> downloads = new HashMap<>();
+        for (int i = 0; i < 8; i++) {
+            downloads.put(baseUrl + "/file?i=" + i, new File(folder.getRoot(), i + ".bin"));
+        }
+        downloads.put(baseUrl + "/missing", new File(folder.getRoot(), "missing.bin"));
+        Map<String, Exception> failures = HttpClientUtil.download(downloads, 3);
+        Assert.assertEquals(Collections.singleton(baseUrl + "/missing"), failures.keySet());
+        for (int i = 0; i < 8; i++) {
+            Assert.assertArrayEquals(FILE, Files.readAllBytes(new File(folder.getRoot(), i + ".bin").toPath()));
+        }
+    }
+
+    @Test
+    public void testBatchConcurrency() {
+        for (int[] limits : new int[][]{{10, 2}, {3, 10}}) {
+            maxActive.set(0);
+            List<String> urls = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                urls.add(baseUrl + "/slow?i=" + i);
+            }
+            Set<String> bodies = new HashSet<>();
+            Iterator<HttpClientUtil.FetchResult> results = HttpClientUtil.getAll(urls, limits[0], limits[1], 10000);
+            while (results.hasNext()) {
+                HttpClientUtil.FetchResult result = results.next();
+                Assert.assertTrue(result.toString(), result.isSuccess());
+                bodies.add(result.getBody());
+            }
+            Assert.assertEquals(30, bodies.size());
+            //同时执行的请求数不超过总上限与每主机上限中较小者
+            Assert.assertTrue(maxActive.get() > 1 && maxActive.get() <= Math.min(limits[0], limits[1]));
+        }
+    }
+
+    @Test
+    public void testBatchClampedToPool() {
+        HttpClientUtil.configure(HttpClientConfig.builder().maxPerRoute(2).build());
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            urls.add(baseUrl + "/slow?i=" + i);
+        }
+        //超过连接池上限的并发数按上限执行，排队的请求不会因等待连接而超时
+        Iterator<HttpClientUtil.FetchResult> results = HttpClientUtil.getAll(urls, 100, 50, 300);
+        int count = 0;
+        while (results.hasNext()) {
+            HttpClientUtil.FetchResult result = results.next();
+            Assert.assertTrue(result.toString(), result.isSuccess());
+            count++;
+        }
+        Assert.assertEquals(60, count);
+        Assert.assertTrue(maxActive.get() <= 2);
+    }
+
+    @Test(timeout = 20000)
+    public void testBatchShutdown() {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            urls.add(baseUrl + "/slow?i=" + i);
+        }
+        Iterator<HttpClientUtil.FetchResult> results = HttpClientUtil.getAll(urls, 2, 2, 10000);
+        Assert.assertTrue(results.next().isSuccess());
+        //执行中关闭连接池，其余请求失败但迭代不会阻塞
+        HttpClientUtil.shutdown();
+        int count = 1;
+        while (results.hasNext()) {
+            results.next();
+            count++;
+        }
+        Assert.assertEquals(30, count);
+    }
+
+    @Test
+    public void testBatchFailureIsolation() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        String closed = "http://127.0.0.1:" + socket.getLocalPort() + "/echo";
+        socket.close();
+        List<String> urls = Arrays.asList(baseUrl + "/sleep?ms=3000", baseUrl + "/sleep?ms=300", baseUrl + "/missing", closed, baseUrl + "/sleep?ms=0");
+        Map<String, HttpClientUtil.FetchResult> byUrl = new HashMap<>();
+        List<String> order = new ArrayList<>();
+        Iterator<HttpClientUtil.FetchResult> results = HttpClientUtil.getAll(urls, 10, 10, 1000);
+        while (results.hasNext()) {
+            HttpClientUtil.FetchResult result = results.next();
+            String url = result.getRequest().getURI().toString();
+            byUrl.put(url, result);
+            order.add(url);
+        }
+        Assert.assertFalse(results.hasNext());
+        Assert.assertEquals(5, order.size());
+        //按完成顺序返回：超时的请求最后完成
+        Assert.assertEquals(baseUrl + "/sleep?ms=3000", order.get(4));
+        Assert.assertTrue(order.indexOf(baseUrl + "/sleep?ms=0") < order.indexOf(baseUrl + "/sleep?ms=300"));
+
+        Assert.assertTrue(byUrl.get(baseUrl + "/sleep?ms=3000").getException() instanceof TimeoutException);
+        Assert.assertEquals("ms=300", byUrl.get(baseUrl + "/sleep?ms=300").getBody());
+        Assert.assertEquals(404, byUrl.get(baseUrl + "/missing").getStatus());
+        Assert.assertFalse(byUrl.get(baseUrl + "/missing").isSuccess());
+        Assert.assertTrue(byUrl.get(closed).getException() instanceof IOException);
+        Assert.assertEquals(-1, byUrl.get(closed).getStatus());
+        Assert.assertTrue(byUrl.get(baseUrl + "/sleep?ms=0").isSuccess());
+    }
+
+    @Test
+    public void testBatchTimeoutReleasesConnection() {
+        //只有一个连接：超时的请求必须关闭它，后面的请求才能在自己的超时内拿到连接
+        HttpClientUtil.configure(HttpClientConfig.builder().maxPerRoute(1).build());
+        List<String> urls = Arrays.asList(baseUrl + "/sleep?ms=3000", baseUrl + "/sleep?ms=0");
+        Iterator<HttpClientUtil.FetchResult> results = HttpClientUtil.getAll(urls, 2, 1, 500);
+        HttpClientUtil.FetchResult slow = results.next();
+        Assert.assertEquals(baseUrl + "/sleep?ms=3000", slow.getRequest().getURI().toString());
+        Assert.assertTrue(slow.getException() instanceof TimeoutException);
+        HttpClientUtil.FetchResult fast = results.next();
+        Assert.assertTrue(fast.toString(), fast.isSuccess());
+        Assert.assertEquals("ms=0", fast.getBody());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConfig() {
+        HttpClientConfig.builder().maxTotal(10).maxPerRoute(20).build();
+    }
+}
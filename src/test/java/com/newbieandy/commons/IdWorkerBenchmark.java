@@ -0,0 +1,61 @@
+package com.newbieandy.commons;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID生成器吞吐量对比（JMH）
+ * 运行方式：先执行 mvn test-compile，再以测试classpath运行本类的main方法，
+ * 可通过参数指定线程数，例如 IdWorkerBenchmark 16
+ * 注意：单节点每毫秒最多4096个ID，高并发下各实现都会受此上限约束，
+ * 对比的是达到上限之前的扩展性以及锁等待造成的损耗
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdWorkerBenchmark {
+
+    private final IdWorker synchronizedWorker = new IdWorker(1, 1);
+    private final IdWorker atomicWorker = new AtomicIdWorker(1, 1);
+    private final IdWorker shardedWorker = new ShardedIdWorker(1, 1, 3);
+
+    @Benchmark
+    public long synchronizedNextId() {
+        return synchronizedWorker.nextId();
+    }
+
+    @Benchmark
+    public long atomicNextId() {
+        return atomicWorker.nextId();
+    }
+
+    @Benchmark
+    public long shardedNextId() {
+        return shardedWorker.nextId();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        Options options = new OptionsBuilder()
+                .include(IdWorkerBenchmark.class.getSimpleName())
+                .threads(threads)
+                .build();
+        new Runner(options).run();
+    }
+}
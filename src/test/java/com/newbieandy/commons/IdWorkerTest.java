@@ -1,7 +1,21 @@
 package com.newbieandy.commons;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
 /**
  * Created by machao on 2016/9/20.
  */
@@ -12,4 +26,313 @@ public class IdWorkerTest {
         long id = idWorker.nextId();
         System.out.println(id);
     }
+
+    @Test
+    public void testAtomicIdWorkerConcurrentUnique() throws InterruptedException {
+        assertConcurrentUnique(new AtomicIdWorker(1, 1));
+    }
+
+    @Test
+    public void testShardedIdWorkerConcurrentUnique() throws InterruptedException {
+        assertConcurrentUnique(new ShardedIdWorker(1, 1, 3));
+    }
+
+    @Test
+    public void testBufferedIdSupplierConcurrentUnique() throws InterruptedException {
+        BufferedIdSupplier supplier = new BufferedIdSupplier(new AtomicIdWorker(6, 1), 1024, 512);
+        try {
+            Assert.assertEquals(1024, supplier.getDepth());
+            assertConcurrentUnique(supplier);
+            Assert.assertTrue(supplier.getRefillCount() > 1);
+        } finally {
+            supplier.close();
+        }
+    }
+
+    private void assertConcurrentUnique(IdWorker worker) throws InterruptedException {
+        assertConcurrentUnique((LongSupplier) worker::nextId);
+    }
+
+    private void assertConcurrentUnique(final LongSupplier worker) throws InterruptedException {
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 20000; j++) {
+                        ids.add(worker.getAsLong());
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(threads.length * 20000, ids.size());
+    }
+
+    @Test
+    public void testNextIdsUniqueAndIncreasing() {
+        IdWorker[] workers = {new IdWorker(2, 1), new AtomicIdWorker(2, 1), new ShardedIdWorker(2, 1, 3)};
+        for (IdWorker worker : workers) {
+            long[] ids = new long[50000];
+            worker.nextIds(ids);
+            for (int i = 1; i < ids.length; i++) {
+                Assert.assertTrue(ids[i] > ids[i - 1]);
+            }
+            Assert.assertTrue(worker.nextId() > ids[ids.length - 1]);
+        }
+    }
+
+    @Test
+    public void testSequenceStarter() {
+        IdWorker worker = new IdWorker(3, 1);
+        worker.setSequenceStarter(SequenceStarter.ZERO);
+        long[] ids = worker.nextIds(5000);
+        //首个ID必然处于新的毫秒，序列号从0开始
+        Assert.assertEquals(0L, ids[0] & 0xFFF);
+
+        SequenceStarter table = new SequenceStarter.RandomTable(64, 10);
+        for (int i = 0; i < 1000; i++) {
+            long sequence = table.initialSequence();
+            Assert.assertTrue(sequence >= 0 && sequence < 10);
+        }
+    }
+
+    @Test
+    public void testClockBackwardsPolicies() {
+        //默认策略抛出异常
+        ManualClockIdWorker failWorker = new ManualClockIdWorker(4, 1, 0);
+        failWorker.nextId();
+        failWorker.now -= 100;
+        try {
+            failWorker.nextId();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals(1, failWorker.getClockBackwardsFailures());
+        }
+
+        //借用逻辑时钟，序列号用完后逻辑时间+1
+        ManualClockIdWorker logicalWorker = new ManualClockIdWorker(4, 1, 0);
+        logicalWorker.setClockBackwardsPolicy(ClockBackwardsPolicy.LOGICAL_CLOCK);
+        long last = logicalWorker.nextId();
+        logicalWorker.now -= 100;
+        for (int i = 0; i < 10000; i++) {
+            long id = logicalWorker.nextId();
+            Assert.assertTrue(id > last);
+            last = id;
+        }
+        Assert.assertTrue(logicalWorker.getLogicalClockBorrows() > 0);
+
+        //占用时钟序列位，回拨后的ID与回拨前不同
+        ManualClockIdWorker sequenceWorker = new ManualClockIdWorker(4, 1, 2);
+        sequenceWorker.setSequenceStarter(SequenceStarter.ZERO);
+        sequenceWorker.setClockBackwardsPolicy(ClockBackwardsPolicy.CLOCK_SEQUENCE);
+        Set<Long> ids = new HashSet<Long>();
+        long start = sequenceWorker.now;
+        for (int round = 0; round < 3; round++) {
+            sequenceWorker.now = start;
+            for (int i = 0; i < 100; i++) {
+                Assert.assertTrue(ids.add(sequenceWorker.nextId()));
+                sequenceWorker.now++;
+            }
+        }
+        Assert.assertEquals(2, sequenceWorker.getClockSequenceBumps());
+    }
+
+    @Test
+    public void testTimeSource() throws InterruptedException {
+        TimeSource.Cached cached = new TimeSource.Cached();
+        try {
+            IdWorker worker = new AtomicIdWorker(5, 1);
+            worker.setTimeSource(cached);
+            long[] ids = worker.nextIds(20000);
+            for (int i = 1; i < ids.length; i++) {
+                Assert.assertTrue(ids[i] > ids[i - 1]);
+            }
+            long before = cached.currentTimeMillis();
+            Thread.sleep(20);
+            Assert.assertTrue(cached.currentTimeMillis() > before);
+        } finally {
+            cached.close();
+        }
+
+        TimeSource monotonic = new TimeSource.Monotonic();
+        Assert.assertTrue(Math.abs(monotonic.currentTimeMillis() - System.currentTimeMillis()) < 1000);
+    }
+
+    @Test
+    public void testCustomLayout() {
+        IdLayout layout = IdLayout.builder().workerIdBits(4).sequenceBits(14).build();
+        Assert.assertEquals(42, layout.getTimestampBits());
+        IdWorker worker = new AtomicIdWorker(layout, 15, 7);
+        worker.setSequenceStarter(SequenceStarter.ZERO);
+        long[] ids = worker.nextIds(16384);
+        for (int i = 1; i < ids.length; i++) {
+            Assert.assertTrue(ids[i] > ids[i - 1]);
+        }
+        Assert.assertEquals(15L, (ids[0] >>> 14) & 0xF);
+        Assert.assertEquals(7L, (ids[0] >>> 18) & 0x7);
+
+        try {
+            IdLayout.builder().workerIdBits(10).sequenceBits(16).build();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //时间标识不足35位
+        }
+    }
+
+    @Test
+    public void testDecode() {
+        long before = System.currentTimeMillis();
+        long id = new IdWorker(9, 5).nextId();
+        long after = System.currentTimeMillis();
+        long timestamp = IdWorker.timestampOf(id);
+        Assert.assertTrue(timestamp >= before && timestamp <= after);
+        Assert.assertEquals(9L, IdWorker.workerOf(id));
+        Assert.assertEquals(5L, IdWorker.datacenterOf(id));
+        Assert.assertTrue(IdWorker.minIdForTime(timestamp) <= id);
+        Assert.assertTrue(IdWorker.maxIdForTime(timestamp) >= id);
+        Assert.assertEquals(IdWorker.maxIdForTime(timestamp) + 1, IdWorker.minIdForTime(timestamp + 1));
+
+        IdLayout layout = IdLayout.builder().workerIdBits(4).sequenceBits(14).build();
+        long customId = new IdWorker(layout, 11, 2).nextId();
+        Assert.assertEquals(11L, layout.workerOf(customId));
+        Assert.assertEquals(2L, layout.datacenterOf(customId));
+    }
+
+    @Test
+    public void testFileWorkerIdAllocator() throws Exception {
+        Path directory = Files.createTempDirectory("idworker-lease");
+        IdLayout layout = IdLayout.builder().workerIdBits(1).build();
+        //有效期足够长，后台续约不会在测试期间发生，续约由测试直接触发
+        long ttl = 60000;
+        FileWorkerIdAllocator allocator = new FileWorkerIdAllocator(directory, 2, ttl);
+        List<WorkerIdLease> leases = new ArrayList<>();
+        try {
+            IdWorker first = new IdWorker(layout, allocator);
+            leases.add(first.getWorkerIdLease());
+            long acquired = System.currentTimeMillis();
+            IdWorker second = new IdWorker(layout, allocator);
+            leases.add(second.getWorkerIdLease());
+            Assert.assertEquals(2L, first.datacenterId);
+            Assert.assertNotEquals(first.workerId, second.workerId);
+            //只有2个工作机器ID，已全部占用
+            try {
+                allocator.acquire(layout);
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                //没有空闲的工作机器ID
+            }
+
+            //续约后有效期延长
+            WorkerIdLease firstLease = first.getWorkerIdLease();
+            long oldDeadline = acquired + ttl - ttl / 3;
+            Assert.assertFalse(firstLease.isValid(oldDeadline));
+            Thread.sleep(10);
+            ((Runnable) firstLease).run();
+            Assert.assertTrue(firstLease.isValid(oldDeadline));
+            Assert.assertNull(firstLease.getFailure());
+
+            //续约失败时记录原因，有效期不变
+            Path firstFile = directory.resolve(String.format("worker-2-%d.lease", first.workerId));
+            byte[] content = Files.readAllBytes(firstFile);
+            Files.delete(firstFile);
+            Files.createDirectory(firstFile);
+            ((Runnable) firstLease).run();
+            Assert.assertTrue(firstLease.getFailure() instanceof IOException);
+            first.nextId();
+            Files.delete(firstFile);
+            Files.write(firstFile, content);
+            ((Runnable) firstLease).run();
+            Assert.assertNull(firstLease.getFailure());
+
+            //租约被他人占用后立即失效，生成ID时报告原因
+            Files.write(firstFile, ("other " + (System.currentTimeMillis() + ttl)).getBytes(StandardCharsets.UTF_8));
+            ((Runnable) firstLease).run();
+            try {
+                first.nextId();
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertSame(firstLease.getFailure(), e.getCause());
+            }
+
+            //释放后租约失效，工作机器ID可被重新申请
+            second.getWorkerIdLease().close();
+            try {
+                second.nextId();
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                //租约已失效
+            }
+            WorkerIdLease third = allocator.acquire(layout);
+            leases.add(third);
+            Assert.assertEquals(second.workerId, third.getWorkerId());
+        } finally {
+            for (WorkerIdLease lease : leases) {
+                lease.close();
+            }
+            allocator.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testFileWorkerIdAllocatorCorruptAndClosed() throws Exception {
+        Path directory = Files.createTempDirectory("idworker-lease");
+        IdLayout layout = IdLayout.builder().workerIdBits(1).build();
+        FileWorkerIdAllocator allocator = new FileWorkerIdAllocator(directory, 2, 60000);
+        try {
+            //内容无法解析的租约文件视为已过期
+            Files.write(directory.resolve("worker-2-0.lease"), "foo bar".getBytes(StandardCharsets.UTF_8));
+            WorkerIdLease lease = allocator.acquire(layout);
+            Assert.assertEquals(0L, lease.getWorkerId());
+            lease.close();
+
+            //关闭后不能再申请，也不留下租约文件
+            allocator.close();
+            try {
+                allocator.acquire(layout);
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                //分配器已关闭
+            }
+            Assert.assertFalse(Files.exists(directory.resolve("worker-2-0.lease")));
+        } finally {
+            allocator.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * 手动控制时钟的ID生成器
+     */
+    private static class ManualClockIdWorker extends IdWorker {
+        long now = System.currentTimeMillis();
+
+        ManualClockIdWorker(long workerId, long datacenterId, int clockSequenceBits) {
+            super(workerId, datacenterId, clockSequenceBits);
+        }
+
+        @Override
+        protected long timeGen() {
+            return now;
+        }
+
+        @Override
+        protected long tilNextMillis(long lastTimestamp) {
+            now = lastTimestamp + 1;
+            return now;
+        }
+    }
 }